@@ -0,0 +1,69 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares scanning all signature methods, as done for every candidate certificate before, with the lookup table of
+ * SignatureMethod and the allow-list of VerificationPolicy. Run with -prof gc to see the allocation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AlgorithmLookupBenchmark {
+
+    private String keyAlgorithm = "EC";
+
+    private String uri = SignatureMethod.ECDSA_SHA384.getUri();
+
+    private VerificationPolicy policy = VerificationPolicy.FAIL_FAST.withoutSignatureMethods(SignatureMethod.RSA_SHA1);
+
+    @Benchmark
+    public SignatureMethod scan() {
+        for (SignatureMethod method : SignatureMethod.values()) {
+            if (keyAlgorithm.equalsIgnoreCase(method.getName()) && uri.equalsIgnoreCase(method.getUri())) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    @Benchmark
+    public SignatureMethod lookup() {
+        return SignatureMethod.fromValues(keyAlgorithm, uri);
+    }
+
+    @Benchmark
+    public boolean policy() {
+        return policy.isSignatureMethodAllowed(uri);
+    }
+
+}
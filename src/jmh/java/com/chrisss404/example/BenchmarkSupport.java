@@ -0,0 +1,156 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import org.w3c.dom.Document;
+
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Provides generated key material and documents, so that the benchmarks run offline.
+ */
+public final class BenchmarkSupport {
+
+    public static final String ALIAS = "benchmark";
+
+    public static final String SECRET = "benchmark";
+
+    /**
+     * Discards everything written to it.
+     */
+    public static final OutputStream DISCARD = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Generates a keystore holding a fresh key pair with a self-signed certificate.
+     *
+     * @param keyAlgorithm The algorithm of the key pair, as understood by keytool.
+     * @param keySize      The size of the key, or null to use the default of the algorithm.
+     * @return The generated keystore.
+     */
+    public static KeyStore generateKeyStore(String keyAlgorithm, Integer keySize) throws IOException,
+            InterruptedException, GeneralSecurityException {
+
+        File file = File.createTempFile("benchmark", ".p12");
+        if (!file.delete()) {
+            throw new IOException("Cannot prepare keystore file " + file);
+        }
+
+        try {
+            List<String> command = new ArrayList<>(Arrays.asList(
+                    new File(System.getProperty("java.home"), "bin/keytool").getPath(), "-genkeypair",
+                    "-alias", ALIAS, "-keyalg", keyAlgorithm, "-dname", "CN=Benchmark", "-validity", "2",
+                    "-storetype", "PKCS12", "-keystore", file.getPath(), "-storepass", SECRET, "-keypass", SECRET
+            ));
+            if (keySize != null) {
+                command.add("-keysize");
+                command.add(keySize.toString());
+            }
+
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            byte[] output = readFully(process.getInputStream());
+            if (process.waitFor() != 0) {
+                throw new IOException("keytool failed: " + new String(output, StandardCharsets.UTF_8));
+            }
+
+            KeyStore ks = KeyStore.getInstance("PKCS12");
+            try (InputStream is = new FileInputStream(file)) {
+                ks.load(is, SECRET.toCharArray());
+            }
+            return ks;
+        } finally {
+            if (file.exists() && !file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * @param keyStore A keystore created by {@link #generateKeyStore(String, Integer)}.
+     * @return The private key entry of the keystore.
+     */
+    public static KeyStore.PrivateKeyEntry getPrivateKeyEntry(KeyStore keyStore) throws GeneralSecurityException {
+        return (KeyStore.PrivateKeyEntry) keyStore.getEntry(ALIAS,
+                new KeyStore.PasswordProtection(SECRET.toCharArray()));
+    }
+
+    /**
+     * Generates an unsigned XML document of approximately the given size.
+     *
+     * @param size The wanted size in bytes.
+     * @return The UTF-8 encoded document.
+     */
+    public static byte[] generateDocument(int size) {
+        StringBuilder sb = new StringBuilder(size + 128);
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?><document>");
+        for (int i = 0; sb.length() < size - 11; i++) {
+            sb.append("<item id=\"").append(i).append("\"><content>I owe you ").append(i)
+                    .append(" dollars.</content></item>");
+        }
+        sb.append("</document>");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Serializes a DOM document.
+     *
+     * @param doc The document to serialize.
+     * @return The serialized document.
+     */
+    public static byte[] serialize(Document doc) throws TransformerException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        Transformer trans = TransformerFactory.newInstance().newTransformer();
+        trans.transform(new DOMSource(doc), new StreamResult(baos));
+        return baos.toByteArray();
+    }
+
+    private static byte[] readFully(InputStream is) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        for (int n; (n = is.read(buffer)) != -1; ) {
+            baos.write(buffer, 0, n);
+        }
+        return baos.toByteArray();
+    }
+
+}
@@ -0,0 +1,136 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares inclusive and exclusive canonicalization when signing a deeply nested, namespace heavy document, and
+ * streaming signatures of a document that is canonicalized with one that is declared pre-canonical.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CanonicalizationBenchmark {
+
+    private static final int RECORDS = 2000;
+
+    private static final int DEPTH = 12;
+
+    @Param({"INCLUSIVE", "EXCLUSIVE"})
+    private String profile;
+
+    private byte[] document;
+
+    private byte[] canonicalDocument;
+
+    private SigningSession signingSession;
+
+    private SigningSession preCanonicalSession;
+
+    @Setup
+    public void setUp() throws Exception {
+        KeyStore ks = BenchmarkSupport.generateKeyStore("RSA", 2048);
+        KeyStore.PrivateKeyEntry privateKey = BenchmarkSupport.getPrivateKeyEntry(ks);
+        SigningProfile signingProfile = "EXCLUSIVE".equals(profile) ? SigningProfile.EXCLUSIVE :
+                SigningProfile.INCLUSIVE;
+        document = generateDocument();
+        canonicalDocument = canonicalize(document, signingProfile.getEffectiveReferenceCanonicalization());
+        signingSession = newSigner(signingProfile).openSession(privateKey);
+        preCanonicalSession = newSigner(signingProfile.withPreCanonicalInput()).openSession(privateKey);
+    }
+
+    @Benchmark
+    public Document sign() {
+        return signingSession.sign(new ByteArrayInputStream(document));
+    }
+
+    @Benchmark
+    public void streamSign() {
+        signingSession.sign(new ByteArrayInputStream(canonicalDocument), BenchmarkSupport.DISCARD);
+    }
+
+    @Benchmark
+    public void streamSignPreCanonical() {
+        preCanonicalSession.sign(new ByteArrayInputStream(canonicalDocument), BenchmarkSupport.DISCARD);
+    }
+
+    private static XmlSigner newSigner(SigningProfile signingProfile) {
+        return XmlSigner.builder().signatureMethod(SignatureMethod.RSA_SHA256).profile(signingProfile).build();
+    }
+
+    /**
+     * Generates records nested {@value #DEPTH} levels deep, every level declaring its own namespace and an unused
+     * one.
+     */
+    private static byte[] generateDocument() {
+        StringBuilder sb = new StringBuilder("<records xmlns=\"urn:records\" xmlns:meta=\"urn:meta\">");
+        for (int i = 0; i < RECORDS; i++) {
+            for (int level = 0; level < DEPTH; level++) {
+                sb.append("<l").append(level).append(":level xmlns:l").append(level).append("=\"urn:level:")
+                        .append(level).append("\" xmlns:x").append(level).append("=\"urn:unused:").append(level)
+                        .append("\" meta:index=\"").append(i).append("\">");
+            }
+            sb.append("record ").append(i);
+            for (int level = DEPTH - 1; level >= 0; level--) {
+                sb.append("</l").append(level).append(":level>");
+            }
+        }
+        return sb.append("</records>").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] canonicalize(byte[] xml, Canonicalization canonicalization) throws Exception {
+        ByteArrayOutputStream canonical = new ByteArrayOutputStream();
+        StreamingCanonicalizer canonicalizer = new StreamingCanonicalizer(canonical, canonicalization,
+                Collections.<String>emptyList());
+        XMLStreamReader reader = StaxReaderFactory.getDefault().createReader(new ByteArrayInputStream(xml));
+        try {
+            while (reader.hasNext()) {
+                StaxReaderFactory.next(reader);
+                canonicalizer.write(reader);
+            }
+            canonicalizer.flush();
+        } finally {
+            StaxReaderFactory.closeQuietly(reader);
+            canonicalizer.release();
+        }
+        return canonical.toByteArray();
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures signing and verifying a detached signature over many large external references, digested either on the
+ * calling thread or in parallel.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class DetachedSignatureBenchmark {
+
+    @Param({"24"})
+    private int referenceCount;
+
+    @Param({"4194304"})
+    private int referenceSize;
+
+    /**
+     * The number of threads digesting the references, or 0 to digest them on the calling thread.
+     */
+    @Param({"0", "4"})
+    private int digestThreads;
+
+    private KeyStore.PrivateKeyEntry privateKey;
+
+    private List<String> references;
+
+    private ExecutorService executor;
+
+    private XmlSigner xmlSigner;
+
+    private XmlVerifier xmlVerifier;
+
+    private byte[] signature;
+
+    @Setup
+    public void setUp() throws Exception {
+        KeyStore ks = BenchmarkSupport.generateKeyStore("RSA", 2048);
+        privateKey = BenchmarkSupport.getPrivateKeyEntry(ks);
+
+        final byte[] content = new byte[referenceSize];
+        new Random(42).nextBytes(content);
+        references = new ArrayList<>();
+        for (int i = 0; i < referenceCount; i++) {
+            references.add("attachment-" + i + ".bin");
+        }
+        ReferenceResolver resolver = new ReferenceResolver() {
+            @Override
+            public InputStream resolve(String uri) {
+                return new ByteArrayInputStream(content);
+            }
+        };
+
+        executor = digestThreads == 0 ? null : Executors.newFixedThreadPool(digestThreads);
+        xmlSigner = XmlSigner.builder().signatureMethod(SignatureMethod.RSA_SHA256).resolver(resolver)
+                .digestExecutor(executor).build();
+        xmlVerifier = XmlVerifier.builder(new X509KeySelector(ks)).resolver(resolver).digestExecutor(executor).build();
+        signature = BenchmarkSupport.serialize(xmlSigner.signDetached(references, privateKey));
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Benchmark
+    public Document signDetached() {
+        return xmlSigner.signDetached(references, privateKey);
+    }
+
+    @Benchmark
+    public Document verifyDetached() {
+        return xmlVerifier.verify(new ByteArrayInputStream(signature));
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures re-signing and re-verifying a catalog whose items are signed by ID, with and without a digest cache that
+ * already holds all items.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class DigestCacheBenchmark {
+
+    private static final int ITEM_COUNT = 24;
+
+    @Param({"1024", "102400"})
+    private int itemSize;
+
+    @Param({"false", "true"})
+    private boolean cached;
+
+    private byte[] catalog;
+
+    private byte[] signedCatalog;
+
+    private KeyStore.PrivateKeyEntry privateKey;
+
+    private XmlSigner xmlSigner;
+
+    private XmlVerifier xmlVerifier;
+
+    @Setup
+    public void setUp() throws Exception {
+        StringBuilder sb = new StringBuilder("<catalog xmlns=\"urn:catalog\">");
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            sb.append("<item Id=\"item-").append(i).append("\">");
+            for (int j = 0; j < itemSize / 32; j++) {
+                sb.append("<entry>").append(i).append('-').append(j).append("</entry>");
+            }
+            sb.append("</item>");
+        }
+        catalog = sb.append("</catalog>").toString().getBytes(StandardCharsets.UTF_8);
+
+        KeyStore ks = BenchmarkSupport.generateKeyStore("RSA", 2048);
+        privateKey = BenchmarkSupport.getPrivateKeyEntry(ks);
+        xmlSigner = XmlSigner.builder().signatureMethod(SignatureMethod.RSA_SHA256)
+                .digestCache(cached ? new DigestCache(ITEM_COUNT) : null).build();
+        xmlVerifier = XmlVerifier.builder(new X509KeySelector(ks))
+                .digestCache(cached ? new DigestCache(ITEM_COUNT) : null).build();
+        signedCatalog = BenchmarkSupport.serialize(signElements());
+        xmlVerifier.verify(new ByteArrayInputStream(signedCatalog));
+    }
+
+    @Benchmark
+    public Document signElements() {
+        return xmlSigner.signElements(new ByteArrayInputStream(catalog), "item", privateKey);
+    }
+
+    @Benchmark
+    public Document verifyElements() {
+        return xmlVerifier.verify(new ByteArrayInputStream(signedCatalog));
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput in MB/s of digesting the canonical form of large documents, as done for the enveloped
+ * reference by the streaming signer and verifier, against the throughput of the bare digest over the same bytes. The
+ * {@code megabytes} counter reports the rate.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+@State(Scope.Benchmark)
+public class DigestThroughputBenchmark {
+
+    @Param({"1048576", "16777216", "134217728"})
+    private int documentSize;
+
+    @Param({"SHA256", "SHA512"})
+    private DigestAlgorithm algorithm;
+
+    private byte[] document;
+
+    @Setup
+    public void setUp() {
+        document = BenchmarkSupport.generateDocument(documentSize);
+    }
+
+    @Benchmark
+    public byte[] digest(Throughput throughput) throws Exception {
+        MessageDigest md = EnginePool.acquire(algorithm.getName());
+        try {
+            for (int offset = 0; offset < document.length; offset += BufferPool.BUFFER_SIZE) {
+                md.update(document, offset, Math.min(BufferPool.BUFFER_SIZE, document.length - offset));
+            }
+            throughput.count(document.length);
+            return md.digest();
+        } finally {
+            EnginePool.release(md);
+        }
+    }
+
+    @Benchmark
+    public byte[] canonicalizeAndDigest(Throughput throughput) throws Exception {
+        MessageDigest md = EnginePool.acquire(algorithm.getName());
+        StreamingCanonicalizer canonicalizer = new StreamingCanonicalizer(
+                new DigestOutputStream(BenchmarkSupport.DISCARD, md), Canonicalization.INCLUSIVE,
+                Collections.<String>emptyList());
+        XMLStreamReader reader = StaxReaderFactory.getDefault().createReader(new ByteArrayInputStream(document));
+        try {
+            while (reader.hasNext()) {
+                StaxReaderFactory.next(reader);
+                canonicalizer.write(reader);
+            }
+            canonicalizer.flush();
+            throughput.count(document.length);
+            return md.digest();
+        } finally {
+            StaxReaderFactory.closeQuietly(reader);
+            canonicalizer.release();
+            EnginePool.release(md);
+        }
+    }
+
+    /**
+     * Counts the digested megabytes.
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Throughput {
+
+        public double megabytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            megabytes = 0;
+        }
+
+        void count(int bytes) {
+            megabytes += bytes / (1024.0 * 1024.0);
+        }
+    }
+
+}
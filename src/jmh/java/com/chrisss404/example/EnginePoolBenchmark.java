@@ -0,0 +1,70 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares looking up a new MessageDigest for every operation with the per-thread engine pool. The pool is meant to
+ * avoid contention in the provider framework with many threads, e.g. -t 32, which has only been measured on a single
+ * core so far, where both variants perform the same.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EnginePoolBenchmark {
+
+    private byte[] certificate;
+
+    @Setup
+    public void setUp() {
+        certificate = new byte[1024];
+        new Random(42).nextBytes(certificate);
+    }
+
+    @Benchmark
+    public byte[] newEnginePerOperation() throws Exception {
+        return MessageDigest.getInstance("SHA-256").digest(certificate);
+    }
+
+    @Benchmark
+    public byte[] pooledEngine() throws Exception {
+        MessageDigest md = EnginePool.acquire("SHA-256");
+        try {
+            return md.digest(certificate);
+        } finally {
+            EnginePool.release(md);
+        }
+    }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the streaming verification of large documents read from a file stream, a memory-mapped file, a direct
+ * buffer and a heap array. Run with -prof gc to compare the allocation rates.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class InputSourceBenchmark {
+
+    @Param({"10485760", "104857600"})
+    private int documentSize;
+
+    private Path file;
+
+    private ByteBuffer directBuffer;
+
+    private byte[] heapArray;
+
+    private StreamingXmlVerifier xmlVerifier;
+
+    @Setup
+    public void setUp() throws Exception {
+        KeyStore ks = BenchmarkSupport.generateKeyStore("RSA", 2048);
+        heapArray = BenchmarkSupport.serialize(new XmlSigner().sign(
+                new ByteArrayInputStream(BenchmarkSupport.generateDocument(documentSize)),
+                BenchmarkSupport.getPrivateKeyEntry(ks)));
+
+        file = Files.createTempFile("benchmark", ".xml");
+        Files.write(file, heapArray);
+        directBuffer = ByteBuffer.allocateDirect(heapArray.length);
+        directBuffer.put(heapArray).flip();
+        xmlVerifier = new StreamingXmlVerifier(ks);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        Files.delete(file);
+    }
+
+    @Benchmark
+    public void fileStream() throws Exception {
+        try (InputStream in = Files.newInputStream(file)) {
+            xmlVerifier.verify(in);
+        }
+    }
+
+    @Benchmark
+    public void mappedFile() {
+        xmlVerifier.verifyFile(file);
+    }
+
+    @Benchmark
+    public void directBuffer() {
+        xmlVerifier.verifyBuffer(directBuffer);
+    }
+
+    @Benchmark
+    public void heapArray() {
+        xmlVerifier.verify(heapArray, 0, heapArray.length);
+    }
+
+}
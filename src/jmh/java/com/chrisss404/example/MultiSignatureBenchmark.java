@@ -0,0 +1,103 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures verifying all signatures of a document countersigned by several parties, with the signatures verified one
+ * after the other or by a thread pool.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MultiSignatureBenchmark {
+
+    @Param({"2", "5"})
+    private int signatureCount;
+
+    @Param({"1024", "102400"})
+    private int itemSize;
+
+    /**
+     * The number of threads verifying the signatures, or 0 to verify them on the calling thread.
+     */
+    @Param({"0", "4"})
+    private int signatureThreads;
+
+    private byte[] signedDocument;
+
+    private ExecutorService executor;
+
+    private XmlVerifier xmlVerifier;
+
+    @Setup
+    public void setUp() throws Exception {
+        StringBuilder sb = new StringBuilder("<order><item Id=\"item\">");
+        for (int i = 0; i < itemSize / 32; i++) {
+            sb.append("<entry>").append(i).append("</entry>");
+        }
+        byte[] document = sb.append("</item></order>").toString().getBytes(StandardCharsets.UTF_8);
+
+        KeyStore ks = BenchmarkSupport.generateKeyStore("RSA", 2048);
+        XmlSigner xmlSigner = new XmlSigner();
+        for (int i = 0; i < signatureCount; i++) {
+            document = BenchmarkSupport.serialize(xmlSigner.signElements(new ByteArrayInputStream(document), "item",
+                    BenchmarkSupport.getPrivateKeyEntry(ks)));
+        }
+        signedDocument = document;
+
+        executor = signatureThreads == 0 ? null : Executors.newFixedThreadPool(signatureThreads);
+        xmlVerifier = new XmlVerifier(new X509KeySelector(ks));
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Benchmark
+    public Document verifySignatures() {
+        return xmlVerifier.verifySignatures(new ByteArrayInputStream(signedDocument), SignatureQuorum.ALL, executor)
+                .getDocument();
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares verifying a large envelope whose small header is signed by ID, with the complete document parsed into a
+ * DOM tree and with only the signature and the header loaded by the selective parser.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class SelectiveParsingBenchmark {
+
+    @Param({"1024", "10240"})
+    private int bodyKilobytes;
+
+    @Param({"false", "true"})
+    private boolean selective;
+
+    private byte[] signedEnvelope;
+
+    private XmlVerifier xmlVerifier;
+
+    @Setup
+    public void setUp() throws Exception {
+        StringBuilder sb = new StringBuilder("<envelope xmlns=\"urn:envelope\"><header Id=\"header\">")
+                .append("<to>urn:recipient</to><messageId>42</messageId></header><body>");
+        for (int i = 0; i < bodyKilobytes * 32; i++) {
+            sb.append("<entry>").append(i % 100000).append("</entry>");
+        }
+        byte[] envelope = sb.append("</body></envelope>").toString().getBytes(StandardCharsets.UTF_8);
+
+        KeyStore ks = BenchmarkSupport.generateKeyStore("RSA", 2048);
+        signedEnvelope = BenchmarkSupport.serialize(new XmlSigner().signElements(new ByteArrayInputStream(envelope),
+                "header", BenchmarkSupport.getPrivateKeyEntry(ks)));
+        xmlVerifier = XmlVerifier.builder(new X509KeySelector(ks))
+                .parser(selective ? new SelectiveXmlParser() : PooledXmlParser.getDefault()).build();
+    }
+
+    @Benchmark
+    public Document verify() {
+        return xmlVerifier.verify(new ByteArrayInputStream(signedEnvelope));
+    }
+
+}
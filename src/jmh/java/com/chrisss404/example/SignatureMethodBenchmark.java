@@ -0,0 +1,79 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+import java.io.ByteArrayInputStream;
+import java.security.KeyStore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of a single signature and verification of a small document for different key types, with the
+ * signature method chosen from the key. Ed25519 keys can be added with -p keyType=Ed25519 on Java 21 and later.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SignatureMethodBenchmark {
+
+    @Param({"RSA:2048", "RSA:4096", "EC:256", "EC:384"})
+    private String keyType;
+
+    private byte[] document;
+
+    private byte[] signedDocument;
+
+    private SigningSession signingSession;
+
+    private XmlVerifier xmlVerifier;
+
+    @Setup
+    public void setUp() throws Exception {
+        String[] type = keyType.split(":");
+        KeyStore ks = BenchmarkSupport.generateKeyStore(type[0], type.length > 1 ? Integer.valueOf(type[1]) : null);
+        document = BenchmarkSupport.generateDocument(1024);
+        signingSession = new XmlSigner().openSession(BenchmarkSupport.getPrivateKeyEntry(ks));
+        signedDocument = BenchmarkSupport.serialize(sign());
+        xmlVerifier = new XmlVerifier(ks);
+    }
+
+    @Benchmark
+    public Document sign() {
+        return signingSession.sign(new ByteArrayInputStream(document));
+    }
+
+    @Benchmark
+    public Document verify() {
+        return xmlVerifier.verify(new ByteArrayInputStream(signedDocument));
+    }
+
+}
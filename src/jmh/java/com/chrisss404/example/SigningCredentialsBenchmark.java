@@ -0,0 +1,71 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+import java.io.ByteArrayInputStream;
+import java.security.KeyStore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares signing a small document with a private key unlocked from the keystore for every request with signing by
+ * alias from a registry of unlocked keys.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SigningCredentialsBenchmark {
+
+    private byte[] document;
+
+    private KeyStore keyStore;
+
+    private XmlSigner xmlSigner;
+
+    @Setup
+    public void setUp() throws Exception {
+        keyStore = BenchmarkSupport.generateKeyStore("RSA", 2048);
+        document = BenchmarkSupport.generateDocument(1024);
+        xmlSigner = XmlSigner.builder()
+                .credentials(new SigningCredentials(keyStore, BenchmarkSupport.SECRET.toCharArray())).build();
+    }
+
+    @Benchmark
+    public Document signWithKeyStoreEntry() throws Exception {
+        return xmlSigner.sign(new ByteArrayInputStream(document), BenchmarkSupport.getPrivateKeyEntry(keyStore));
+    }
+
+    @Benchmark
+    public Document signByAlias() {
+        return xmlSigner.sign(new ByteArrayInputStream(document), BenchmarkSupport.ALIAS);
+    }
+
+}
@@ -0,0 +1,72 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.security.KeyStore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares verifying a replayed document with and without a verification result cache that already holds its outcome.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VerificationResultCacheBenchmark {
+
+    @Param({"1024", "1048576"})
+    private int documentSize;
+
+    @Param({"false", "true"})
+    private boolean cached;
+
+    private byte[] signedDocument;
+
+    private XmlVerifier xmlVerifier;
+
+    @Setup
+    public void setUp() throws Exception {
+        KeyStore ks = BenchmarkSupport.generateKeyStore("RSA", 2048);
+        signedDocument = BenchmarkSupport.serialize(new XmlSigner().sign(
+                new ByteArrayInputStream(BenchmarkSupport.generateDocument(documentSize)),
+                BenchmarkSupport.getPrivateKeyEntry(ks)));
+        xmlVerifier = XmlVerifier.builder(new X509KeySelector(ks))
+                .resultCache(cached ? new VerificationResultCache(1024, 10, TimeUnit.MINUTES) : null).build();
+        xmlVerifier.verifyCached(signedDocument, 0, signedDocument.length);
+    }
+
+    @Benchmark
+    public VerificationResult verifyReplay() {
+        return xmlVerifier.verifyCached(signedDocument, 0, signedDocument.length);
+    }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+import java.io.ByteArrayInputStream;
+import java.security.KeyStore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the signing throughput for different document sizes and signature methods.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class XmlSignerBenchmark {
+
+    @Param({"1024", "102400", "10485760", "104857600"})
+    private int documentSize;
+
+    @Param({"RSA_SHA1", "RSA_SHA256", "RSA_SHA512"})
+    private SignatureMethod signatureMethod;
+
+    private byte[] document;
+
+    private KeyStore.PrivateKeyEntry privateKey;
+
+    private XmlSigner xmlSigner;
+
+    private SigningSession signingSession;
+
+    @Setup
+    public void setUp() throws Exception {
+        document = BenchmarkSupport.generateDocument(documentSize);
+        privateKey = BenchmarkSupport.getPrivateKeyEntry(BenchmarkSupport.generateKeyStore("RSA", 2048));
+        xmlSigner = new XmlSigner(signatureMethod);
+        signingSession = xmlSigner.openSession(privateKey);
+    }
+
+    @Benchmark
+    public Document sign() {
+        return xmlSigner.sign(new ByteArrayInputStream(document), privateKey);
+    }
+
+    @Benchmark
+    public Document signWithSession() {
+        return signingSession.sign(new ByteArrayInputStream(document));
+    }
+
+    @Benchmark
+    public void signAndTransform() throws Exception {
+        BenchmarkSupport.DISCARD.write(BenchmarkSupport.serialize(
+                xmlSigner.sign(new ByteArrayInputStream(document), privateKey)));
+    }
+
+    @Benchmark
+    public void signAndSerialize() {
+        xmlSigner.signAndSerialize(new ByteArrayInputStream(document), BenchmarkSupport.DISCARD, privateKey);
+    }
+
+    @Benchmark
+    public void signStreaming() {
+        xmlSigner.sign(new ByteArrayInputStream(document), BenchmarkSupport.DISCARD, privateKey);
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+import java.io.ByteArrayInputStream;
+import java.security.KeyStore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the verification throughput for different document sizes and signature methods.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class XmlVerifierBenchmark {
+
+    @Param({"1024", "102400", "10485760", "104857600"})
+    private int documentSize;
+
+    // RSA_SHA1 is rejected by the secure validation mode of recent JDKs
+    @Param({"RSA_SHA256", "RSA_SHA512"})
+    private SignatureMethod signatureMethod;
+
+    private byte[] signedDocument;
+
+    private XmlVerifier xmlVerifier;
+
+    private StreamingXmlVerifier streamingXmlVerifier;
+
+    @Setup
+    public void setUp() throws Exception {
+        KeyStore ks = BenchmarkSupport.generateKeyStore("RSA", 2048);
+        Document doc = new XmlSigner(signatureMethod).sign(
+                new ByteArrayInputStream(BenchmarkSupport.generateDocument(documentSize)),
+                BenchmarkSupport.getPrivateKeyEntry(ks)
+        );
+        signedDocument = BenchmarkSupport.serialize(doc);
+        xmlVerifier = new XmlVerifier(ks);
+        streamingXmlVerifier = new StreamingXmlVerifier(ks);
+    }
+
+    @Benchmark
+    public Document verify() {
+        return xmlVerifier.verify(new ByteArrayInputStream(signedDocument));
+    }
+
+    @Benchmark
+    public void verifyStreaming() {
+        streamingXmlVerifier.verify(new ByteArrayInputStream(signedDocument));
+    }
+
+}
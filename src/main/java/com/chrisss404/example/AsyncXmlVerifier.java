@@ -0,0 +1,326 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Verifies XML documents on a dedicated, bounded pool of threads, so that callers like event loops never block.
+ * <p>
+ * The pool has a fixed number of threads and a bounded queue. When both are exhausted, further documents are not
+ * queued but completed at once with an {@link VerificationResult.Status#ERROR} result, which keeps the memory held
+ * by waiting documents bounded. The queue depth and the number of rejected documents are exposed, so that callers
+ * can apply back pressure before the pool saturates.
+ * <p>
+ * Verified documents are only retained in the results when requested, as a parsed document usually takes many times
+ * the memory of its serialized form. Documents that are not retained are verified by
+ * {@link XmlVerifier#verifyCached(InputStream)}, so replays are answered from the result cache of the verifier, if it
+ * has one. Instances are safe for use by multiple concurrent threads.
+ */
+public class AsyncXmlVerifier {
+
+    private final XmlVerifier verifier;
+
+    private final ThreadPoolExecutor executor;
+
+    private final int queueCapacity;
+
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /**
+     * Constructs an AsyncXmlVerifier with one thread per available processor.
+     *
+     * @param verifier      The verifier performing the verifications.
+     * @param queueCapacity The maximum number of documents waiting for a thread.
+     */
+    public AsyncXmlVerifier(XmlVerifier verifier, int queueCapacity) {
+        this(verifier, Runtime.getRuntime().availableProcessors(), queueCapacity);
+    }
+
+    /**
+     * Constructs an AsyncXmlVerifier.
+     *
+     * @param verifier      The verifier performing the verifications.
+     * @param threads       The number of threads verifying documents.
+     * @param queueCapacity The maximum number of documents waiting for a thread.
+     */
+    public AsyncXmlVerifier(XmlVerifier verifier, int threads, int queueCapacity) {
+        if (threads < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Number of threads and queue capacity must be positive");
+        }
+        this.verifier = verifier;
+        this.queueCapacity = queueCapacity;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity), new VerifierThreadFactory());
+    }
+
+    /**
+     * Verifies the given XML document asynchronously, without retaining the verified document.
+     *
+     * @param xmlToVerify The XML document to verify.
+     * @return The future result of the verification.
+     */
+    public Future<VerificationResult> verify(InputStream xmlToVerify) {
+        return verify(xmlToVerify, false, null);
+    }
+
+    /**
+     * Verifies the given XML document asynchronously.
+     * <p>
+     * The callback is invoked on the verifying thread, or on the calling thread if the document is rejected because
+     * the pool is saturated. It must not block.
+     *
+     * @param xmlToVerify    The XML document to verify. It is read on the verifying thread.
+     * @param retainDocument Whether the result of a valid document holds the verified document.
+     * @param callback       The callback receiving the result, or null.
+     * @return The future result of the verification.
+     */
+    public Future<VerificationResult> verify(final InputStream xmlToVerify, final boolean retainDocument,
+                                             Callback callback) {
+        return submit(new Callable<VerificationResult>() {
+            @Override
+            public VerificationResult call() {
+                return retainDocument ? VerificationResult.valid(verifier.verify(xmlToVerify)) :
+                        verifier.verifyCached(xmlToVerify);
+            }
+        }, callback);
+    }
+
+    /**
+     * Starts the verification of a document that arrives in chunks, e.g. from a non-blocking network connection.
+     * The chunks are collected without blocking, and the document is verified on the pool once all of them have
+     * arrived.
+     *
+     * @param retainDocument Whether the result of a valid document holds the verified document.
+     * @param callback       The callback receiving the result, or null.
+     * @return The verification collecting the chunks.
+     */
+    public ChunkedVerification begin(boolean retainDocument, Callback callback) {
+        return new ChunkedVerification(retainDocument, callback);
+    }
+
+    /**
+     * @return The number of documents waiting for a thread.
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * @return The number of documents being verified right now.
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * @return Whether all threads are busy and the queue is full, so that further documents are rejected.
+     */
+    public boolean isSaturated() {
+        return executor.getQueue().remainingCapacity() == 0;
+    }
+
+    /**
+     * @return The number of documents rejected because the pool was saturated.
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * Stops accepting documents. Documents already submitted are still verified.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private Future<VerificationResult> submit(final Callable<VerificationResult> verification,
+                                              final Callback callback) {
+        VerificationTask task = new VerificationTask(new Callable<VerificationResult>() {
+            @Override
+            public VerificationResult call() {
+                try {
+                    return verification.call();
+                } catch (XmlVerificationException e) {
+                    return VerificationResult.invalid(e);
+                } catch (Exception e) {
+                    return VerificationResult.error(e);
+                }
+            }
+        }, callback);
+
+        try {
+            executor.execute(task);
+        } catch (final RejectedExecutionException e) {
+            rejectedCount.incrementAndGet();
+            task = new VerificationTask(new Callable<VerificationResult>() {
+                @Override
+                public VerificationResult call() {
+                    return VerificationResult.error(e);
+                }
+            }, callback);
+            task.run();
+        }
+        return task;
+    }
+
+    /**
+     * Receives the result of an asynchronous verification.
+     */
+    public interface Callback {
+
+        /**
+         * Handles the result of a verification.
+         *
+         * @param result The result.
+         */
+        void completed(VerificationResult result);
+    }
+
+    /**
+     * Collects the chunks of a document and verifies it once all chunks have arrived. Not safe for use by multiple
+     * concurrent threads.
+     */
+    public final class ChunkedVerification {
+
+        private final ExposedByteArrayOutputStream content = new ExposedByteArrayOutputStream();
+
+        private final boolean retainDocument;
+
+        private final Callback callback;
+
+        private Future<VerificationResult> result;
+
+        private ChunkedVerification(boolean retainDocument, Callback callback) {
+            this.retainDocument = retainDocument;
+            this.callback = callback;
+        }
+
+        /**
+         * Appends the next chunk of the document.
+         *
+         * @param chunk The buffer holding the chunk between its position and limit. The buffer is consumed.
+         */
+        public void append(ByteBuffer chunk) {
+            checkOpen();
+            if (chunk.hasArray()) {
+                content.write(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining());
+                chunk.position(chunk.limit());
+            } else {
+                byte[] bytes = new byte[chunk.remaining()];
+                chunk.get(bytes);
+                content.write(bytes, 0, bytes.length);
+            }
+        }
+
+        /**
+         * Appends the next chunk of the document.
+         *
+         * @param chunk  The array holding the chunk.
+         * @param offset The offset of the chunk in the array.
+         * @param length The length of the chunk.
+         */
+        public void append(byte[] chunk, int offset, int length) {
+            checkOpen();
+            content.write(chunk, offset, length);
+        }
+
+        /**
+         * Marks the document as complete and submits it for verification.
+         *
+         * @return The future result of the verification.
+         */
+        public Future<VerificationResult> complete() {
+            checkOpen();
+            result = submit(new Callable<VerificationResult>() {
+                @Override
+                public VerificationResult call() {
+                    return retainDocument ?
+                            VerificationResult.valid(verifier.verify(content.getBuffer(), 0, content.size())) :
+                            verifier.verifyCached(content.getBuffer(), 0, content.size());
+                }
+            }, callback);
+            return result;
+        }
+
+        private void checkOpen() {
+            if (result != null) {
+                throw new IllegalStateException("Verification has already been completed");
+            }
+        }
+    }
+
+    /**
+     * Completes with the result of a verification and hands it to the callback.
+     */
+    private static final class VerificationTask extends FutureTask<VerificationResult> {
+
+        private final Callback callback;
+
+        private VerificationTask(Callable<VerificationResult> verification, Callback callback) {
+            super(verification);
+            this.callback = callback;
+        }
+
+        @Override
+        protected void done() {
+            if (callback == null || isCancelled()) {
+                return;
+            }
+            try {
+                callback.completed(get());
+            } catch (Exception ignored) {
+                // a failing callback must neither break the pool nor the result of the verification
+            }
+        }
+    }
+
+    /**
+     * Creates named daemon threads, so that an unused verifier does not keep the JVM alive.
+     */
+    private static final class VerifierThreadFactory implements ThreadFactory {
+
+        private static final AtomicInteger POOL_NUMBER = new AtomicInteger();
+
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        private final String prefix = "xml-verifier-" + POOL_NUMBER.incrementAndGet() + "-";
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, prefix + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+}
@@ -0,0 +1,61 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the number of documents processed by a batch and the time it took.
+ */
+public class BatchStatistics {
+
+    private final int documentCount;
+
+    private final long elapsedNanos;
+
+    /**
+     * Constructs a BatchStatistics instance.
+     *
+     * @param documentCount The number of processed documents.
+     * @param elapsedNanos  The duration of the batch in nanoseconds.
+     */
+    public BatchStatistics(int documentCount, long elapsedNanos) {
+        this.documentCount = documentCount;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public int getDocumentCount() {
+        return documentCount;
+    }
+
+    public long getElapsed(TimeUnit unit) {
+        return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return The number of documents processed per second.
+     */
+    public double getThroughput() {
+        return elapsedNanos == 0 ? 0 : documentCount * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d documents in %d ms (%.1f documents/s)", documentCount,
+                getElapsed(TimeUnit.MILLISECONDS), getThroughput());
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+/**
+ * Keeps one large byte buffer per thread for the output of canonicalization and for reading external resources, so
+ * that large documents are digested in big blocks without allocating a new buffer per document.
+ * <p>
+ * A buffer is leased by {@link #acquire()} and handed back by {@link #release(byte[])}. While the buffer of a thread
+ * is leased, further requests of that thread get a new buffer, so nested users never share one. Heap buffers are used
+ * on purpose: MessageDigest digests direct buffers by copying them into a small temporary array, which would split
+ * every block into pieces of 4 KB again.
+ */
+final class BufferPool {
+
+    /**
+     * The size of the pooled buffers, large enough that the intrinsified digest loops dominate the per-call overhead.
+     */
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<byte[]> BUFFERS = new ThreadLocal<>();
+
+    private BufferPool() {
+    }
+
+    /**
+     * Leases the buffer of the calling thread.
+     *
+     * @return A buffer of {@link #BUFFER_SIZE} bytes with arbitrary content.
+     */
+    static byte[] acquire() {
+        byte[] buffer = BUFFERS.get();
+        if (buffer == null) {
+            return new byte[BUFFER_SIZE];
+        }
+        BUFFERS.set(null);
+        return buffer;
+    }
+
+    /**
+     * Hands a leased buffer back to the pool of the calling thread.
+     *
+     * @param buffer The buffer, which must no longer be used by the caller.
+     */
+    static void release(byte[] buffer) {
+        if (buffer != null && buffer.length == BUFFER_SIZE) {
+            BUFFERS.set(buffer);
+        }
+    }
+
+}
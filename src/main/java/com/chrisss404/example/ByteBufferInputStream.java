@@ -0,0 +1,102 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads the remaining bytes of a ByteBuffer, e.g. a direct or memory-mapped buffer, without copying them to the heap
+ * up front. The position of the given buffer is left untouched.
+ */
+final class ByteBufferInputStream extends InputStream {
+
+    private static final long MAXIMUM_REGION_SIZE = Integer.MAX_VALUE;
+
+    private final ByteBuffer buffer;
+
+    /**
+     * Constructs a ByteBufferInputStream.
+     *
+     * @param buffer The buffer to read.
+     */
+    ByteBufferInputStream(ByteBuffer buffer) {
+        this.buffer = buffer.duplicate();
+    }
+
+    /**
+     * Maps the given file into memory and reads it. Files larger than 2 GB are mapped in several regions.
+     *
+     * @param file The file to read.
+     * @return The stream over the mapped file.
+     * @throws IOException in case the file cannot be mapped.
+     */
+    static InputStream map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size <= MAXIMUM_REGION_SIZE) {
+                return new ByteBufferInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+            }
+
+            List<InputStream> regions = new ArrayList<>();
+            for (long position = 0; position < size; position += MAXIMUM_REGION_SIZE) {
+                regions.add(new ByteBufferInputStream(channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(MAXIMUM_REGION_SIZE, size - position))));
+            }
+            return new SequenceInputStream(Collections.enumeration(regions));
+        }
+    }
+
+    @Override
+    public int read() {
+        return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        int count = Math.min(len, buffer.remaining());
+        buffer.get(b, off, count);
+        return count;
+    }
+
+    @Override
+    public long skip(long n) {
+        int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+        buffer.position(buffer.position() + count);
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return buffer.remaining();
+    }
+
+}
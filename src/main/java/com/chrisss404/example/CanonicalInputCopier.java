@@ -0,0 +1,231 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Copies a document that is already in canonical form byte by byte, splitting it before the end tag of the document
+ * element, which is where an enveloped signature is inserted.
+ * <p>
+ * Only the start tag of the document element is parsed, in order to learn the namespaces and xml:* attributes the
+ * signature inherits. Everything else is copied without being looked at, so the document has to end with the end tag
+ * of its document element; comments or processing instructions following it are rejected.
+ */
+final class CanonicalInputCopier {
+
+    private final OutputStream body;
+
+    private final OutputStream trailer;
+
+    private final Map<String, String> namespaces = new HashMap<>();
+
+    private final Map<String, String> xmlAttributes = new HashMap<>();
+
+    /**
+     * Constructs a CanonicalInputCopier.
+     *
+     * @param body    The stream receiving the document up to the end tag of the document element.
+     * @param trailer The stream receiving the end tag of the document element.
+     */
+    CanonicalInputCopier(OutputStream body, OutputStream trailer) {
+        this.body = body;
+        this.trailer = trailer;
+    }
+
+    /**
+     * Copies the given document.
+     *
+     * @param in The canonical XML document.
+     * @throws IOException in case the document cannot be read or written.
+     */
+    void copy(InputStream in) throws IOException {
+        byte[] pooled = BufferPool.acquire();
+        try {
+            copy(in, pooled);
+        } finally {
+            BufferPool.release(pooled);
+        }
+    }
+
+    private void copy(InputStream in, byte[] buffer) throws IOException {
+        int length = 0;
+        int startTagEnd;
+        while ((startTagEnd = findStartTagEnd(buffer, length)) < 0) {
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            int read = in.read(buffer, length, buffer.length - length);
+            if (read < 0) {
+                throw new InvalidDocumentException("Invalid XML input");
+            }
+            length += read;
+        }
+
+        byte[] endTag = readStartTag(buffer, startTagEnd);
+        body.write(buffer, 0, startTagEnd);
+
+        byte[] window = new byte[endTag.length + BufferPool.BUFFER_SIZE];
+        int held = hold(buffer, startTagEnd, length - startTagEnd, window, 0, endTag.length);
+        for (int read; (read = in.read(buffer)) >= 0; ) {
+            held = hold(buffer, 0, read, window, held, endTag.length);
+        }
+        if (held != endTag.length || !Arrays.equals(Arrays.copyOf(window, held), endTag)) {
+            throw new InvalidDocumentException("Canonical input must end with the end tag of the document element");
+        }
+        trailer.write(window, 0, held);
+    }
+
+    /**
+     * @return The namespaces in scope of the document element, mapped from prefix to URI.
+     */
+    Map<String, String> getNamespacesInScope() {
+        return namespaces;
+    }
+
+    /**
+     * @return The xml:* attributes inherited by the children of the document element, mapped from local name to value.
+     */
+    Map<String, String> getXmlAttributesInScope() {
+        return xmlAttributes;
+    }
+
+    /**
+     * Appends the given bytes to the window and writes all but its last bytes, which might be the end tag of the
+     * document element, to the body.
+     *
+     * @return The number of bytes held back in the window.
+     */
+    private int hold(byte[] bytes, int offset, int length, byte[] window, int held, int keep) throws IOException {
+        while (length > 0) {
+            int chunk = Math.min(length, window.length - held);
+            System.arraycopy(bytes, offset, window, held, chunk);
+            held += chunk;
+            offset += chunk;
+            length -= chunk;
+            if (held > keep) {
+                body.write(window, 0, held - keep);
+                System.arraycopy(window, held - keep, window, 0, keep);
+                held = keep;
+            }
+        }
+        return held;
+    }
+
+    /**
+     * Reads the namespaces and xml:* attributes of the document element.
+     *
+     * @return The end tag of the document element.
+     */
+    private byte[] readStartTag(byte[] buffer, int length) {
+        XMLStreamReader reader = StaxReaderFactory.getDefault().createReader(
+                new ByteArrayInputStream(buffer, 0, length));
+        try {
+            while (StaxReaderFactory.next(reader) != XMLStreamConstants.START_ELEMENT) {
+                // skip the processing instructions and comments preceding the document element
+            }
+            for (int i = 0, count = reader.getNamespaceCount(); i < count; i++) {
+                String uri = reader.getNamespaceURI(i);
+                if (uri != null && !uri.isEmpty()) {
+                    String prefix = reader.getNamespacePrefix(i);
+                    namespaces.put(prefix == null ? "" : prefix, uri);
+                }
+            }
+            for (int i = 0, count = reader.getAttributeCount(); i < count; i++) {
+                if (XMLConstants.XML_NS_URI.equals(reader.getAttributeNamespace(i))) {
+                    xmlAttributes.put(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+                }
+            }
+            String prefix = reader.getPrefix();
+            String name = prefix == null || prefix.isEmpty() ? reader.getLocalName() :
+                    prefix + ":" + reader.getLocalName();
+            return ("</" + name + ">").getBytes(StandardCharsets.UTF_8);
+        } catch (XMLStreamException e) {
+            throw new InvalidDocumentException("Invalid XML input", e);
+        } finally {
+            StaxReaderFactory.closeQuietly(reader);
+        }
+    }
+
+    /**
+     * Finds the end of the start tag of the document element, skipping the processing instructions and comments
+     * preceding it.
+     *
+     * @return The index following the start tag, or -1 if the given bytes do not contain it completely.
+     */
+    private static int findStartTagEnd(byte[] bytes, int length) {
+        int i = 0;
+        while (i < length) {
+            if (bytes[i] == '\n') {
+                i++;
+            } else if (bytes[i] != '<') {
+                throw new InvalidDocumentException("Invalid XML input");
+            } else if (i + 1 == length) {
+                return -1;
+            } else if (bytes[i + 1] == '?' || bytes[i + 1] == '!') {
+                int end = indexOf(bytes, length, bytes[i + 1] == '?' ? "?>" : "-->", i + 2);
+                if (end < 0) {
+                    return -1;
+                }
+                i = end;
+            } else {
+                byte quote = 0;
+                for (int j = i + 1; j < length; j++) {
+                    if (quote != 0) {
+                        if (bytes[j] == quote) {
+                            quote = 0;
+                        }
+                    } else if (bytes[j] == '"' || bytes[j] == '\'') {
+                        quote = bytes[j];
+                    } else if (bytes[j] == '>') {
+                        return j + 1;
+                    }
+                }
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return The index following the first occurrence of the given ASCII string, or -1 if there is none.
+     */
+    private static int indexOf(byte[] bytes, int length, String s, int from) {
+        outer:
+        for (int i = from; i <= length - s.length(); i++) {
+            for (int j = 0; j < s.length(); j++) {
+                if (bytes[i + j] != s.charAt(j)) {
+                    continue outer;
+                }
+            }
+            return i + s.length();
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import javax.xml.crypto.dsig.CanonicalizationMethod;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Holds supported canonicalization algorithms.
+ */
+public enum Canonicalization {
+
+    INCLUSIVE(CanonicalizationMethod.INCLUSIVE, false, false),
+    INCLUSIVE_WITH_COMMENTS(CanonicalizationMethod.INCLUSIVE_WITH_COMMENTS, false, true),
+    EXCLUSIVE(CanonicalizationMethod.EXCLUSIVE, true, false),
+    EXCLUSIVE_WITH_COMMENTS(CanonicalizationMethod.EXCLUSIVE_WITH_COMMENTS, true, true);
+
+    private static final Map<String, Canonicalization> BY_URI;
+
+    static {
+        Map<String, Canonicalization> byUri = new HashMap<>();
+        for (Canonicalization canonicalization : values()) {
+            byUri.put(canonicalization.getUri(), canonicalization);
+        }
+        BY_URI = Collections.unmodifiableMap(byUri);
+    }
+
+    private final String uri;
+
+    private final boolean exclusive;
+
+    private final boolean withComments;
+
+    Canonicalization(String uri, boolean exclusive, boolean withComments) {
+        this.uri = uri;
+        this.exclusive = exclusive;
+        this.withComments = withComments;
+    }
+
+    public String getUri() {
+        return uri;
+    }
+
+    /**
+     * @return Whether only the namespaces visibly used by an element are rendered (Exclusive XML Canonicalization).
+     */
+    public boolean isExclusive() {
+        return exclusive;
+    }
+
+    /**
+     * @return Whether comments are part of the canonical form.
+     */
+    public boolean isWithComments() {
+        return withComments;
+    }
+
+    /**
+     * Finds the corresponding enum from the given URI.
+     *
+     * @param uri The URI of the wanted algorithm.
+     * @return The corresponding algorithm, or null if the algorithm is not supported.
+     */
+    public static Canonicalization fromUri(String uri) {
+        return BY_URI.get(uri);
+    }
+}
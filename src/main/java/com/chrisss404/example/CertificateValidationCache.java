@@ -0,0 +1,163 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers the outcome of certificate chain validations, keyed by the SHA-256 fingerprint of the chain.
+ * <p>
+ * The cache is bounded and evicts the least recently used entry once it is full. Every entry expires after the
+ * configured time to live, or earlier when a certificate of the chain runs out of validity.
+ */
+public class CertificateValidationCache {
+
+    private final int maximumSize;
+
+    private final long timeToLiveMillis;
+
+    private final Map<String, Result> entries;
+
+    /**
+     * Constructs a CertificateValidationCache.
+     *
+     * @param maximumSize The maximum number of cached validation results.
+     * @param timeToLive  The duration a validation result stays valid.
+     * @param unit        The unit of the time to live.
+     */
+    public CertificateValidationCache(final int maximumSize, long timeToLive, TimeUnit unit) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("Maximum size must be positive");
+        }
+        this.maximumSize = maximumSize;
+        this.timeToLiveMillis = unit.toMillis(timeToLive);
+        this.entries = new LinkedHashMap<String, Result>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Result> eldest) {
+                return size() > maximumSize;
+            }
+        };
+    }
+
+    /**
+     * Computes the cache key of the given certificate chain.
+     *
+     * @param chain The certificate chain.
+     * @return The hex encoded SHA-256 fingerprint over all certificates of the chain.
+     * @throws CertificateEncodingException in case a certificate cannot be encoded.
+     * @throws NoSuchAlgorithmException     in case SHA-256 is not available.
+     */
+    public static String fingerprint(X509Certificate[] chain) throws CertificateEncodingException,
+            NoSuchAlgorithmException {
+        MessageDigest md = EnginePool.acquire("SHA-256");
+        try {
+            for (X509Certificate certificate : chain) {
+                md.update(certificate.getEncoded());
+            }
+            return Utility.toHex(md.digest());
+        } finally {
+            EnginePool.release(md);
+        }
+    }
+
+    /**
+     * Looks up the validation result of a certificate chain.
+     *
+     * @param fingerprint The fingerprint of the certificate chain.
+     * @return The cached result, or null if the chain has not been validated yet or the result expired.
+     */
+    public synchronized Result get(String fingerprint) {
+        Result result = entries.get(fingerprint);
+        if (result != null && result.expiresAt <= System.currentTimeMillis()) {
+            entries.remove(fingerprint);
+            return null;
+        }
+        return result;
+    }
+
+    /**
+     * Stores the validation result of a certificate chain.
+     *
+     * @param fingerprint The fingerprint of the certificate chain.
+     * @param chain       The validated certificate chain.
+     * @param failure     The reason why the validation failed, or null if the chain is trusted.
+     */
+    public void put(String fingerprint, X509Certificate[] chain, CertificateException failure) {
+        long expiresAt = System.currentTimeMillis() + timeToLiveMillis;
+        for (X509Certificate certificate : chain) {
+            expiresAt = Math.min(expiresAt, certificate.getNotAfter().getTime());
+        }
+
+        synchronized (this) {
+            entries.put(fingerprint, new Result(failure, expiresAt));
+        }
+    }
+
+    /**
+     * Discards all cached validation results.
+     */
+    public synchronized void invalidateAll() {
+        entries.clear();
+    }
+
+    /**
+     * @return The number of cached validation results.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return The maximum number of cached validation results.
+     */
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Holds the outcome of a single certificate chain validation.
+     */
+    public static final class Result {
+
+        private final CertificateException failure;
+
+        private final long expiresAt;
+
+        private Result(CertificateException failure, long expiresAt) {
+            this.failure = failure;
+            this.expiresAt = expiresAt;
+        }
+
+        public boolean isTrusted() {
+            return failure == null;
+        }
+
+        public CertificateException getFailure() {
+            return failure;
+        }
+    }
+
+}
@@ -0,0 +1,72 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Holds supported digest algorithms.
+ */
+public enum DigestAlgorithm {
+
+    SHA1("SHA-1", "http://www.w3.org/2000/09/xmldsig#sha1"),
+    SHA256("SHA-256", "http://www.w3.org/2001/04/xmlenc#sha256"),
+    SHA384("SHA-384", "http://www.w3.org/2001/04/xmldsig-more#sha384"),
+    SHA512("SHA-512", "http://www.w3.org/2001/04/xmlenc#sha512");
+
+    private static final Map<String, DigestAlgorithm> BY_URI;
+
+    static {
+        Map<String, DigestAlgorithm> byUri = new HashMap<>();
+        for (DigestAlgorithm algorithm : values()) {
+            byUri.put(algorithm.getUri(), algorithm);
+        }
+        BY_URI = Collections.unmodifiableMap(byUri);
+    }
+
+    private final String name;
+
+    private final String uri;
+
+    DigestAlgorithm(String name, String uri) {
+        this.name = name;
+        this.uri = uri;
+    }
+
+    /**
+     * @return The standard name of the algorithm, as used by MessageDigest.
+     */
+    public String getName() {
+        return name;
+    }
+
+    public String getUri() {
+        return uri;
+    }
+
+    /**
+     * Finds the corresponding enum from the given URI.
+     *
+     * @param uri The URI of the wanted algorithm.
+     * @return The corresponding algorithm, or null if the algorithm is not supported.
+     */
+    public static DigestAlgorithm fromUri(String uri) {
+        return BY_URI.get(uri);
+    }
+}
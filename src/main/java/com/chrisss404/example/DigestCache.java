@@ -0,0 +1,272 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.ProcessingInstruction;
+
+import javax.xml.XMLConstants;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Remembers the digest values of elements referenced by ID, keyed by a SHA-256 fingerprint of the element content.
+ * <p>
+ * The fingerprint covers the subtree together with the namespaces and xml attributes it inherits, which is everything
+ * its canonical form depends on. It is computed by a single walk over the DOM tree, without escaping, namespace
+ * processing or the node set machinery of the XML signature API, so that unchanged elements of a re-signed or
+ * re-verified document are not canonicalized again.
+ * <p>
+ * The cache is bounded and evicts the least recently used entry once it is full.
+ */
+public class DigestCache {
+
+    private final int maximumSize;
+
+    private final Map<String, byte[]> entries;
+
+    /**
+     * Constructs a DigestCache.
+     *
+     * @param maximumSize The maximum number of cached digest values.
+     */
+    public DigestCache(final int maximumSize) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("Maximum size must be positive");
+        }
+        this.maximumSize = maximumSize;
+        this.entries = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+                return size() > maximumSize;
+            }
+        };
+    }
+
+    /**
+     * Computes the cache key of the given element.
+     *
+     * @param element         The referenced element.
+     * @param digestAlgorithm The URI of the digest algorithm of the reference.
+     * @return The hex encoded SHA-256 fingerprint of the element.
+     * @throws NoSuchAlgorithmException in case SHA-256 is not available.
+     */
+    public static String fingerprint(Element element, String digestAlgorithm) throws NoSuchAlgorithmException {
+        Map<String, String> namespaces = new TreeMap<>();
+        Map<String, String> xmlAttributes = new TreeMap<>();
+        for (Node ancestor = element.getParentNode(); ancestor instanceof Element;
+             ancestor = ancestor.getParentNode()) {
+            NamedNodeMap attributes = ancestor.getAttributes();
+            for (int i = 0, length = attributes.getLength(); i < length; i++) {
+                Attr attribute = (Attr) attributes.item(i);
+                if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(attribute.getNamespaceURI())) {
+                    putIfAbsent(namespaces, attribute.getNodeName(), attribute.getValue());
+                } else if (XMLConstants.XML_NS_URI.equals(attribute.getNamespaceURI())) {
+                    putIfAbsent(xmlAttributes, attribute.getNodeName(), attribute.getValue());
+                }
+            }
+        }
+
+        MessageDigest md = EnginePool.acquire(DigestAlgorithm.SHA256.getName());
+        try {
+            Fingerprint fingerprint = new Fingerprint(md);
+            fingerprint.update(digestAlgorithm);
+            fingerprint.update(namespaces);
+            fingerprint.update(xmlAttributes);
+            fingerprint.update(element);
+            return Utility.toHex(fingerprint.digest());
+        } finally {
+            EnginePool.release(md);
+        }
+    }
+
+    private static void putIfAbsent(Map<String, String> map, String key, String value) {
+        if (!map.containsKey(key)) {
+            map.put(key, value);
+        }
+    }
+
+    /**
+     * Looks up the digest value of an element.
+     *
+     * @param fingerprint The fingerprint of the element.
+     * @return The cached digest value, or null if the element has not been digested yet.
+     */
+    public synchronized byte[] get(String fingerprint) {
+        byte[] digestValue = entries.get(fingerprint);
+        return digestValue == null ? null : digestValue.clone();
+    }
+
+    /**
+     * Stores the digest value of an element.
+     *
+     * @param fingerprint The fingerprint of the element.
+     * @param digestValue The digest value of the canonical form of the element.
+     */
+    public void put(String fingerprint, byte[] digestValue) {
+        byte[] copy = Arrays.copyOf(digestValue, digestValue.length);
+        synchronized (this) {
+            entries.put(fingerprint, copy);
+        }
+    }
+
+    /**
+     * Discards all cached digest values.
+     */
+    public synchronized void invalidateAll() {
+        entries.clear();
+    }
+
+    /**
+     * @return The number of cached digest values.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return The maximum number of cached digest values.
+     */
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Feeds a DOM subtree into a message digest. Every string is prefixed with its length and every node with its
+     * type, which keeps the encoding unambiguous without escaping anything. Comments are skipped, since they are not
+     * part of the canonical form.
+     */
+    private static final class Fingerprint {
+
+        private static final int BUFFER_SIZE = 8192;
+
+        private final MessageDigest md;
+
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+
+        private int position;
+
+        private Fingerprint(MessageDigest md) {
+            this.md = md;
+        }
+
+        private void update(Map<String, String> map) {
+            writeInt(map.size());
+            for (Map.Entry<String, String> entry : map.entrySet()) {
+                update(entry.getKey());
+                update(entry.getValue());
+            }
+        }
+
+        private void update(Node node) {
+            switch (node.getNodeType()) {
+                case Node.ELEMENT_NODE:
+                    write(Node.ELEMENT_NODE);
+                    update(node.getNamespaceURI());
+                    update(node.getNodeName());
+                    NamedNodeMap attributes = node.getAttributes();
+                    writeInt(attributes.getLength());
+                    for (int i = 0, length = attributes.getLength(); i < length; i++) {
+                        Node attribute = attributes.item(i);
+                        update(attribute.getNamespaceURI());
+                        update(attribute.getNodeName());
+                        update(attribute.getNodeValue());
+                    }
+                    updateChildren(node);
+                    write(0);
+                    break;
+                case Node.TEXT_NODE:
+                case Node.CDATA_SECTION_NODE:
+                    write(Node.TEXT_NODE);
+                    update(node.getNodeValue());
+                    break;
+                case Node.PROCESSING_INSTRUCTION_NODE:
+                    write(Node.PROCESSING_INSTRUCTION_NODE);
+                    update(((ProcessingInstruction) node).getTarget());
+                    update(((ProcessingInstruction) node).getData());
+                    break;
+                case Node.ENTITY_REFERENCE_NODE:
+                    updateChildren(node);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void updateChildren(Node node) {
+            for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+                update(child);
+            }
+        }
+
+        private void update(String s) {
+            if (s == null) {
+                writeInt(-1);
+                return;
+            }
+            int length = s.length();
+            writeInt(length);
+            for (int i = 0; i < length; i++) {
+                char c = s.charAt(i);
+                if (position > BUFFER_SIZE - 3) {
+                    flush();
+                }
+                if (c < 0x80) {
+                    buffer[position++] = (byte) c;
+                } else {
+                    buffer[position++] = (byte) (0x80 | (c >>> 14));
+                    buffer[position++] = (byte) ((c >>> 7) & 0x7f);
+                    buffer[position++] = (byte) (c & 0x7f);
+                }
+            }
+        }
+
+        private void writeInt(int value) {
+            write(value >>> 24);
+            write(value >>> 16);
+            write(value >>> 8);
+            write(value);
+        }
+
+        private void write(int b) {
+            if (position == BUFFER_SIZE) {
+                flush();
+            }
+            buffer[position++] = (byte) b;
+        }
+
+        private void flush() {
+            md.update(buffer, 0, position);
+            position = 0;
+        }
+
+        private byte[] digest() {
+            flush();
+            return md.digest();
+        }
+    }
+
+}
@@ -0,0 +1,193 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import java.util.Map;
+
+/**
+ * Builds a DOM tree from the events of a single element subtree delivered by a StAX reader.
+ * <p>
+ * The subtree is placed below a context element carrying the namespaces and xml:* attributes in scope at the start
+ * of the subtree, so that it canonicalizes exactly like the original element inside the complete document.
+ */
+final class DomFragmentBuilder {
+
+    private final Document document;
+
+    private final long maximumSize;
+
+    private final Element context;
+
+    private final Map<String, String> namespaces;
+
+    private Node current;
+
+    private Element root;
+
+    private int depth;
+
+    private long size;
+
+    /**
+     * Constructs a DomFragmentBuilder.
+     *
+     * @param document      The document owning the built nodes.
+     * @param namespaces    The namespaces in scope of the subtree, mapped from prefix to URI.
+     * @param xmlAttributes The xml:* attributes inherited by the subtree, mapped from local name to value.
+     * @param maximumSize   The maximum number of characters the subtree may consist of.
+     */
+    DomFragmentBuilder(Document document, Map<String, String> namespaces, Map<String, String> xmlAttributes,
+                       long maximumSize) {
+        this(document, document, namespaces, xmlAttributes, maximumSize);
+    }
+
+    /**
+     * Constructs a DomFragmentBuilder placing the context element below the given parent, so that several subtrees
+     * can share one document.
+     *
+     * @param document      The document owning the built nodes.
+     * @param parent        The node the context element is appended to.
+     * @param namespaces    The namespaces in scope of the subtree, mapped from prefix to URI.
+     * @param xmlAttributes The xml:* attributes inherited by the subtree, mapped from local name to value.
+     * @param maximumSize   The maximum number of characters the subtree may consist of.
+     */
+    DomFragmentBuilder(Document document, Node parent, Map<String, String> namespaces,
+                       Map<String, String> xmlAttributes, long maximumSize) {
+        this.document = document;
+        this.maximumSize = maximumSize;
+        this.namespaces = namespaces;
+
+        this.context = document.createElementNS(null, "context");
+        for (Map.Entry<String, String> namespace : namespaces.entrySet()) {
+            if (!namespace.getValue().isEmpty()) {
+                context.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, namespace.getKey().isEmpty() ?
+                        XMLConstants.XMLNS_ATTRIBUTE : XMLConstants.XMLNS_ATTRIBUTE + ":" + namespace.getKey(),
+                        namespace.getValue());
+            }
+        }
+        for (Map.Entry<String, String> attribute : xmlAttributes.entrySet()) {
+            context.setAttributeNS(XMLConstants.XML_NS_URI, XMLConstants.XML_NS_PREFIX + ":" + attribute.getKey(),
+                    attribute.getValue());
+        }
+        parent.appendChild(context);
+        this.current = context;
+    }
+
+    /**
+     * Appends the current event of the given reader to the subtree.
+     *
+     * @param reader The reader positioned at the event to append.
+     * @return Whether the subtree is complete.
+     */
+    boolean append(XMLStreamReader reader) {
+        switch (reader.getEventType()) {
+            case XMLStreamConstants.START_ELEMENT:
+                Element element = createElement(reader);
+                current.appendChild(element);
+                current = element;
+                if (root == null) {
+                    root = element;
+                }
+                depth++;
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                current = current.getParentNode();
+                depth--;
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+                checkSize(reader.getTextLength());
+                current.appendChild(document.createTextNode(reader.getText()));
+                break;
+            case XMLStreamConstants.COMMENT:
+                checkSize(reader.getTextLength());
+                current.appendChild(document.createComment(reader.getText()));
+                break;
+            case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                current.appendChild(document.createProcessingInstruction(reader.getPITarget(), reader.getPIData()));
+                break;
+            default:
+                break;
+        }
+        return depth == 0;
+    }
+
+    /**
+     * @return The element carrying the namespaces and xml:* attributes in scope of the subtree.
+     */
+    Element getContextElement() {
+        return context;
+    }
+
+    /**
+     * @return The namespaces in scope of the subtree, mapped from prefix to URI.
+     */
+    Map<String, String> getNamespaces() {
+        return namespaces;
+    }
+
+    /**
+     * @return The root element of the subtree.
+     */
+    Element getElement() {
+        return root;
+    }
+
+    private Element createElement(XMLStreamReader reader) {
+        Element element = document.createElementNS(emptyToNull(reader.getNamespaceURI()),
+                qualifiedName(reader.getPrefix(), reader.getLocalName()));
+
+        for (int i = 0, count = reader.getNamespaceCount(); i < count; i++) {
+            String prefix = reader.getNamespacePrefix(i);
+            String uri = reader.getNamespaceURI(i);
+            element.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, prefix == null || prefix.isEmpty() ?
+                    XMLConstants.XMLNS_ATTRIBUTE : XMLConstants.XMLNS_ATTRIBUTE + ":" + prefix,
+                    uri == null ? "" : uri);
+        }
+        for (int i = 0, count = reader.getAttributeCount(); i < count; i++) {
+            String value = reader.getAttributeValue(i);
+            checkSize(value.length());
+            element.setAttributeNS(emptyToNull(reader.getAttributeNamespace(i)),
+                    qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)), value);
+        }
+        return element;
+    }
+
+    private void checkSize(int length) {
+        size += length;
+        if (size > maximumSize) {
+            throw new InvalidDocumentException("XML fragment exceeds the maximum size");
+        }
+    }
+
+    private static String qualifiedName(String prefix, String localName) {
+        return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+    }
+
+    private static String emptyToNull(String s) {
+        return s == null || s.isEmpty() ? null : s;
+    }
+
+}
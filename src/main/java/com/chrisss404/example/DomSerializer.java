@@ -0,0 +1,154 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.ProcessingInstruction;
+
+import javax.xml.XMLConstants;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Serializes DOM nodes as UTF-8 encoded XML, without going through the XSLT identity transformation.
+ * <p>
+ * Namespace declarations missing in the DOM tree are added where elements or attributes need them.
+ */
+final class DomSerializer {
+
+    private final Utf8Output out;
+
+    /**
+     * Constructs a DomSerializer.
+     *
+     * @param out The output receiving the serialized nodes.
+     */
+    DomSerializer(Utf8Output out) {
+        this.out = out;
+    }
+
+    /**
+     * Serializes the given node and all its descendants.
+     *
+     * @param node       The node to serialize.
+     * @param namespaces The namespaces in scope of the node, mapped from prefix to URI.
+     * @throws IOException in case the output cannot be written.
+     */
+    void serialize(Node node, Map<String, String> namespaces) throws IOException {
+        switch (node.getNodeType()) {
+            case Node.DOCUMENT_NODE:
+            case Node.DOCUMENT_FRAGMENT_NODE:
+            case Node.ENTITY_REFERENCE_NODE:
+                serializeChildren(node, namespaces);
+                break;
+            case Node.ELEMENT_NODE:
+                serializeElement(node, namespaces);
+                break;
+            case Node.TEXT_NODE:
+            case Node.CDATA_SECTION_NODE:
+                out.writeText(node.getNodeValue());
+                break;
+            case Node.COMMENT_NODE:
+                out.writeRaw("<!--");
+                out.writeRaw(node.getNodeValue());
+                out.writeRaw("-->");
+                break;
+            case Node.PROCESSING_INSTRUCTION_NODE:
+                ProcessingInstruction pi = (ProcessingInstruction) node;
+                out.writeRaw("<?");
+                out.writeRaw(pi.getTarget());
+                if (pi.getData() != null && !pi.getData().isEmpty()) {
+                    out.writeAscii(' ');
+                    out.writeRaw(pi.getData());
+                }
+                out.writeRaw("?>");
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void serializeChildren(Node node, Map<String, String> namespaces) throws IOException {
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            serialize(child, namespaces);
+        }
+    }
+
+    private void serializeElement(Node element, Map<String, String> parentNamespaces) throws IOException {
+        Map<String, String> namespaces = parentNamespaces;
+        NamedNodeMap attributes = element.getAttributes();
+
+        out.writeAscii('<');
+        out.writeRaw(element.getNodeName());
+        for (int i = 0, length = attributes.getLength(); i < length; i++) {
+            Attr attribute = (Attr) attributes.item(i);
+            if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(attribute.getNamespaceURI())) {
+                String prefix = XMLConstants.XMLNS_ATTRIBUTE.equals(attribute.getNodeName()) ? "" :
+                        attribute.getLocalName();
+                namespaces = declare(namespaces, parentNamespaces, prefix, attribute.getValue());
+            }
+            out.writeAscii(' ');
+            out.writeRaw(attribute.getNodeName());
+            out.writeAttributeValue(attribute.getValue());
+        }
+
+        namespaces = fixup(namespaces, parentNamespaces, element.getPrefix(), element.getNamespaceURI());
+        for (int i = 0, length = attributes.getLength(); i < length; i++) {
+            Attr attribute = (Attr) attributes.item(i);
+            String uri = attribute.getNamespaceURI();
+            if (uri != null && !XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(uri) &&
+                    !XMLConstants.XML_NS_URI.equals(uri)) {
+                namespaces = fixup(namespaces, parentNamespaces, attribute.getPrefix(), uri);
+            }
+        }
+        out.writeAscii('>');
+
+        serializeChildren(element, namespaces);
+
+        out.writeAscii('<');
+        out.writeAscii('/');
+        out.writeRaw(element.getNodeName());
+        out.writeAscii('>');
+    }
+
+    private Map<String, String> fixup(Map<String, String> namespaces, Map<String, String> parentNamespaces,
+                                      String prefix, String uri) throws IOException {
+        String key = prefix == null ? "" : prefix;
+        String value = uri == null ? "" : uri;
+        String current = namespaces.get(key);
+        if (current == null ? value.isEmpty() : current.equals(value)) {
+            return namespaces;
+        }
+
+        out.writeAscii(' ');
+        out.writeName(key.isEmpty() ? null : XMLConstants.XMLNS_ATTRIBUTE,
+                key.isEmpty() ? XMLConstants.XMLNS_ATTRIBUTE : key);
+        out.writeAttributeValue(value);
+        return declare(namespaces, parentNamespaces, key, value);
+    }
+
+    private static Map<String, String> declare(Map<String, String> namespaces, Map<String, String> parentNamespaces,
+                                               String prefix, String uri) {
+        Map<String, String> result = namespaces == parentNamespaces ? new HashMap<>(parentNamespaces) : namespaces;
+        result.put(prefix, uri);
+        return result;
+    }
+
+}
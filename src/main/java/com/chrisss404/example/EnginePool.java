@@ -0,0 +1,74 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps one MessageDigest per algorithm and thread, so that the hot paths do not look up a new engine through the
+ * provider framework for every document.
+ * <p>
+ * An engine is leased by {@link #acquire(String)} and handed back by {@link #release(MessageDigest)}. While the engine
+ * of a thread is leased, further requests of that thread for the same algorithm get a new engine, so nested users,
+ * e.g. a trust lookup while a document is being digested, never share one. Only MessageDigest is pooled: the digest
+ * and signature engines inside the JSR 105 implementation are created by the provider and cannot be replaced, and
+ * signature engines are reused through signing sessions instead.
+ */
+final class EnginePool {
+
+    private static final ThreadLocal<Map<String, MessageDigest>> DIGESTS =
+            new ThreadLocal<Map<String, MessageDigest>>() {
+                @Override
+                protected Map<String, MessageDigest> initialValue() {
+                    return new HashMap<>();
+                }
+            };
+
+    private EnginePool() {
+    }
+
+    /**
+     * Leases the message digest of the calling thread for the given algorithm.
+     *
+     * @param algorithm The JCA name of the digest algorithm.
+     * @return The reset message digest.
+     * @throws NoSuchAlgorithmException in case the algorithm is not available.
+     */
+    static MessageDigest acquire(String algorithm) throws NoSuchAlgorithmException {
+        MessageDigest digest = DIGESTS.get().remove(algorithm);
+        return digest != null ? digest : MessageDigest.getInstance(algorithm);
+    }
+
+    /**
+     * Hands a leased message digest back to the pool of the calling thread.
+     *
+     * @param digest The message digest, which must no longer be used by the caller.
+     */
+    static void release(MessageDigest digest) {
+        if (digest != null) {
+            digest.reset();
+            Map<String, MessageDigest> digests = DIGESTS.get();
+            if (!digests.containsKey(digest.getAlgorithm())) {
+                digests.put(digest.getAlgorithm(), digest);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,32 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Gives access to the collected bytes without copying them.
+ */
+final class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+
+    /**
+     * @return The internal buffer, holding the collected bytes in its first {@link #size()} bytes.
+     */
+    byte[] getBuffer() {
+        return buf;
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps all measurements in memory, in histograms with power of two buckets.
+ * <p>
+ * Histograms are named {@code <operation>.phase.<phase>} for phase latencies, {@code <operation>.size} for document
+ * sizes and {@code <operation>.<signature method>.<outcome>} for the latencies of complete operations. Latencies are
+ * recorded in nanoseconds, sizes in bytes. Recording is lock free.
+ */
+public class HistogramMetrics implements Metrics {
+
+    private final Map<Operation, Map<Phase, Histogram>> phases = new EnumMap<>(Operation.class);
+
+    private final Map<Operation, Histogram> sizes = new EnumMap<>(Operation.class);
+
+    private final ConcurrentMap<String, Histogram> documents = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a HistogramMetrics instance without any measurements.
+     */
+    public HistogramMetrics() {
+        for (Operation operation : Operation.values()) {
+            Map<Phase, Histogram> operationPhases = new EnumMap<>(Phase.class);
+            for (Phase phase : Phase.values()) {
+                operationPhases.put(phase, new Histogram());
+            }
+            phases.put(operation, operationPhases);
+            sizes.put(operation, new Histogram());
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public void recordPhase(Operation operation, Phase phase, long nanos) {
+        phases.get(operation).get(phase).record(nanos);
+    }
+
+    @Override
+    public void recordDocument(Operation operation, SignatureMethod signatureMethod, long size, Outcome outcome,
+                               long nanos) {
+        sizes.get(operation).record(size);
+
+        String name = name(operation, signatureMethod == null ? "unknown" : signatureMethod.name(), outcome.name());
+        Histogram histogram = documents.get(name);
+        if (histogram == null) {
+            Histogram created = new Histogram();
+            histogram = documents.putIfAbsent(name, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        histogram.record(nanos);
+    }
+
+    /**
+     * Takes a snapshot of all histograms recorded so far. Histograms without any values are left out.
+     *
+     * @return The snapshot, mapped from histogram name.
+     */
+    public Snapshot snapshot() {
+        Map<String, HistogramSnapshot> result = new LinkedHashMap<>();
+        for (Operation operation : Operation.values()) {
+            for (Map.Entry<Phase, Histogram> phase : phases.get(operation).entrySet()) {
+                add(result, name(operation, "phase", phase.getKey().name()), phase.getValue());
+            }
+            add(result, name(operation, "size"), sizes.get(operation));
+        }
+        for (Map.Entry<String, Histogram> document : new TreeMap<>(documents).entrySet()) {
+            add(result, document.getKey(), document.getValue());
+        }
+        return new Snapshot(result);
+    }
+
+    private static void add(Map<String, HistogramSnapshot> snapshots, String name, Histogram histogram) {
+        HistogramSnapshot snapshot = histogram.snapshot();
+        if (snapshot.getCount() > 0) {
+            snapshots.put(name, snapshot);
+        }
+    }
+
+    private static String name(Object... parts) {
+        StringBuilder sb = new StringBuilder();
+        for (Object part : parts) {
+            if (sb.length() > 0) {
+                sb.append('.');
+            }
+            sb.append(part.toString().toLowerCase(Locale.ROOT));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Counts values in buckets of powers of two. Bucket i holds the values below 2^i not held by a lower bucket.
+     */
+    private static final class Histogram {
+
+        private final AtomicLongArray buckets = new AtomicLongArray(Long.SIZE + 1);
+
+        private final AtomicLong sum = new AtomicLong();
+
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long value) {
+            value = Math.max(0, value);
+            buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(value));
+            sum.addAndGet(value);
+            for (long current = max.get(); value > current && !max.compareAndSet(current, value); ) {
+                current = max.get();
+            }
+        }
+
+        HistogramSnapshot snapshot() {
+            long[] counts = new long[buckets.length()];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = buckets.get(i);
+            }
+            return new HistogramSnapshot(counts, sum.get(), max.get());
+        }
+    }
+
+    /**
+     * Holds the values of a single histogram at the time of the snapshot.
+     */
+    public static final class HistogramSnapshot {
+
+        private final long[] buckets;
+
+        private final long count;
+
+        private final long sum;
+
+        private final long max;
+
+        private HistogramSnapshot(long[] buckets, long sum, long max) {
+            long total = 0;
+            for (long bucket : buckets) {
+                total += bucket;
+            }
+            this.buckets = buckets;
+            this.count = total;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getSum() {
+            return sum;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * Estimates a quantile by the upper bound of the bucket it falls into.
+         *
+         * @param quantile The quantile, between 0 and 1.
+         * @return The estimated value, never greater than the maximum.
+         */
+        public long getQuantile(double quantile) {
+            long rank = (long) Math.ceil(quantile * count);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank && seen > 0) {
+                    return i == 0 ? 0 : Math.min(max, i == Long.SIZE ? Long.MAX_VALUE : (1L << i) - 1);
+                }
+            }
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "count=%d mean=%.1f p50=%d p99=%d max=%d", count, getMean(),
+                    getQuantile(0.5), getQuantile(0.99), max);
+        }
+    }
+
+    /**
+     * Holds all histograms at the time of the snapshot.
+     */
+    public static final class Snapshot {
+
+        private final Map<String, HistogramSnapshot> histograms;
+
+        private Snapshot(Map<String, HistogramSnapshot> histograms) {
+            this.histograms = Collections.unmodifiableMap(histograms);
+        }
+
+        /**
+         * @return The histograms, mapped from name.
+         */
+        public Map<String, HistogramSnapshot> getHistograms() {
+            return histograms;
+        }
+
+        /**
+         * Writes one line per histogram, consisting of its name and summary.
+         *
+         * @param out The destination of the export.
+         * @throws IOException in case the destination cannot be written.
+         */
+        public void export(Appendable out) throws IOException {
+            for (Map.Entry<String, HistogramSnapshot> histogram : histograms.entrySet()) {
+                out.append(histogram.getKey()).append(' ').append(histogram.getValue().toString()).append('\n');
+            }
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            try {
+                export(sb);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return sb.toString();
+        }
+    }
+
+}
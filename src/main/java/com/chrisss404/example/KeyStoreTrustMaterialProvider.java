@@ -0,0 +1,66 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Supplies the certificates of a keystore held in memory. The snapshot is built on first use and rebuilt on first use
+ * after a refresh, which must be requested whenever the keystore has been modified.
+ */
+public class KeyStoreTrustMaterialProvider implements TrustMaterialProvider {
+
+    private final KeyStore keyStore;
+
+    private volatile TrustSnapshot snapshot;
+
+    /**
+     * Constructs a KeyStoreTrustMaterialProvider.
+     *
+     * @param keyStore The keystore holds the trusted certificates.
+     */
+    public KeyStoreTrustMaterialProvider(KeyStore keyStore) {
+        this.keyStore = keyStore;
+    }
+
+    @Override
+    public TrustSnapshot getSnapshot() {
+        TrustSnapshot result = snapshot;
+        if (result == null) {
+            synchronized (this) {
+                result = snapshot;
+                if (result == null) {
+                    try {
+                        result = TrustSnapshot.build(keyStore);
+                    } catch (KeyStoreException | NoSuchAlgorithmException e) {
+                        throw new TrustMaterialException("Cannot load trusted certificates", e);
+                    }
+                    snapshot = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized void refresh() {
+        snapshot = null;
+    }
+
+}
@@ -0,0 +1,77 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+/**
+ * Receives timing and outcome measurements of signing and verification.
+ * <p>
+ * Implementations must be safe for use by multiple concurrent threads. When {@link #isEnabled()} returns false, no
+ * measurements are taken at all, so that disabled metrics cost next to nothing.
+ */
+public interface Metrics {
+
+    /**
+     * The measured operations.
+     */
+    enum Operation {
+        SIGN, VERIFY
+    }
+
+    /**
+     * The phases an operation is made of.
+     * <p>
+     * {@code DIGEST} covers digesting the references, or for the streaming implementations reading and digesting the
+     * whole document. {@code SIGNATURE} covers canonicalizing SignedInfo and creating or checking the signature
+     * value, without the time spent in {@code KEY_SELECTION}.
+     */
+    enum Phase {
+        PARSE, UNMARSHAL, KEY_SELECTION, DIGEST, SIGNATURE, SERIALIZE
+    }
+
+    /**
+     * The possible outcomes of an operation.
+     */
+    enum Outcome {
+        SUCCESS, INVALID, ERROR
+    }
+
+    /**
+     * @return Whether measurements should be taken.
+     */
+    boolean isEnabled();
+
+    /**
+     * Records the duration of a single phase.
+     *
+     * @param operation The operation the phase belongs to.
+     * @param phase     The measured phase.
+     * @param nanos     The duration of the phase in nanoseconds.
+     */
+    void recordPhase(Operation operation, Phase phase, long nanos);
+
+    /**
+     * Records a completed operation.
+     *
+     * @param operation       The completed operation.
+     * @param signatureMethod The signature method of the document, or null if it is not known or not supported.
+     * @param size            The number of bytes read from the input document.
+     * @param outcome         The outcome of the operation.
+     * @param nanos           The duration of the operation in nanoseconds.
+     */
+    void recordDocument(Operation operation, SignatureMethod signatureMethod, long size, Outcome outcome, long nanos);
+
+}
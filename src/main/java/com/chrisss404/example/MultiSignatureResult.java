@@ -0,0 +1,102 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import org.w3c.dom.Document;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Holds the outcome of verifying all signatures of a document: the result of every signature, and whether enough of
+ * them are valid to satisfy the quorum.
+ */
+public class MultiSignatureResult {
+
+    private final Document document;
+
+    private final SignatureQuorum quorum;
+
+    private final List<SignatureResult> signatures;
+
+    private final int validCount;
+
+    /**
+     * Constructs a MultiSignatureResult.
+     *
+     * @param document   The verified XML document.
+     * @param quorum     The quorum the signatures have to satisfy.
+     * @param signatures The results of all signatures, in document order.
+     */
+    MultiSignatureResult(Document document, SignatureQuorum quorum, List<SignatureResult> signatures) {
+        int valid = 0;
+        for (SignatureResult signature : signatures) {
+            if (signature.isValid()) {
+                valid++;
+            }
+        }
+        this.validCount = valid;
+        this.quorum = quorum;
+        this.signatures = Collections.unmodifiableList(signatures);
+        this.document = quorum.isSatisfied(valid, signatures.size()) ? document : null;
+    }
+
+    /**
+     * @return Whether enough signatures are valid to satisfy the quorum.
+     */
+    public boolean isValid() {
+        return quorum.isSatisfied(validCount, signatures.size());
+    }
+
+    /**
+     * @return The verified XML document, or null if the quorum is not satisfied.
+     */
+    public Document getDocument() {
+        return document;
+    }
+
+    public SignatureQuorum getQuorum() {
+        return quorum;
+    }
+
+    /**
+     * @return The results of all signatures, in document order.
+     */
+    public List<SignatureResult> getSignatures() {
+        return signatures;
+    }
+
+    /**
+     * @return The number of valid signatures.
+     */
+    public int getValidCount() {
+        return validCount;
+    }
+
+    /**
+     * @return The reason why the quorum is not satisfied, or null if it is.
+     */
+    public String getReason() {
+        return isValid() ? null : String.format("%d of %d signatures are valid, %d required", validCount,
+                signatures.size(), quorum.getRequired(signatures.size()));
+    }
+
+    @Override
+    public String toString() {
+        return isValid() ? "VALID " + signatures : "INVALID: " + getReason() + " " + signatures;
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import javax.xml.crypto.AlgorithmMethod;
+import javax.xml.crypto.KeySelector;
+import javax.xml.crypto.KeySelectorException;
+import javax.xml.crypto.KeySelectorResult;
+import javax.xml.crypto.XMLCryptoContext;
+import javax.xml.crypto.dsig.keyinfo.KeyInfo;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Measures the phases of a single sign or verify operation and reports them to the configured metrics.
+ * <p>
+ * When the metrics are disabled, a shared instance is returned whose methods do nothing, so the instrumented code
+ * neither allocates nor reads the clock.
+ */
+final class PhaseTimer {
+
+    private static final PhaseTimer DISABLED = new PhaseTimer(null, null);
+
+    private final Metrics metrics;
+
+    private final Metrics.Operation operation;
+
+    private final long start;
+
+    private long mark;
+
+    private long excluded;
+
+    private SignatureMethod signatureMethod;
+
+    private CountingInputStream input;
+
+    private PhaseTimer(Metrics metrics, Metrics.Operation operation) {
+        this.metrics = metrics;
+        this.operation = operation;
+        this.start = metrics == null ? 0 : System.nanoTime();
+        this.mark = start;
+    }
+
+    /**
+     * Starts measuring an operation.
+     *
+     * @param metrics   The metrics receiving the measurements.
+     * @param operation The measured operation.
+     * @return The timer of the operation.
+     */
+    static PhaseTimer start(Metrics metrics, Metrics.Operation operation) {
+        return metrics.isEnabled() ? new PhaseTimer(metrics, operation) : DISABLED;
+    }
+
+    boolean isEnabled() {
+        return metrics != null;
+    }
+
+    /**
+     * @param input The input document.
+     * @return The input document, counting the bytes read from it if metrics are enabled.
+     */
+    InputStream count(InputStream input) {
+        if (metrics == null || input == null) {
+            return input;
+        }
+        this.input = new CountingInputStream(input);
+        return this.input;
+    }
+
+    /**
+     * @param keySelector The key selector used by the operation.
+     * @return The key selector, recording the time spent selecting keys if metrics are enabled.
+     */
+    KeySelector time(KeySelector keySelector) {
+        return metrics == null ? keySelector : new TimedKeySelector(keySelector);
+    }
+
+    void setSignatureMethod(SignatureMethod signatureMethod) {
+        this.signatureMethod = signatureMethod;
+    }
+
+    /**
+     * Records the time since the previous phase, less the time spent selecting keys, as the given phase.
+     *
+     * @param phase The completed phase.
+     */
+    void phase(Metrics.Phase phase) {
+        if (metrics != null) {
+            long now = System.nanoTime();
+            metrics.recordPhase(operation, phase, now - mark - excluded);
+            mark = now;
+            excluded = 0;
+        }
+    }
+
+    /**
+     * Records the successful completion of the operation.
+     */
+    void succeed() {
+        finish(Metrics.Outcome.SUCCESS);
+    }
+
+    /**
+     * Records the failure of the operation. Rejected and unparsable documents count as invalid, everything else as
+     * error.
+     *
+     * @param cause The reason of the failure.
+     */
+    void fail(Throwable cause) {
+        if (metrics != null) {
+            boolean invalid = cause instanceof XmlVerificationException || cause instanceof InvalidDocumentException ||
+                    cause.getCause() instanceof InvalidDocumentException;
+            finish(invalid ? Metrics.Outcome.INVALID : Metrics.Outcome.ERROR);
+        }
+    }
+
+    private void finish(Metrics.Outcome outcome) {
+        if (metrics != null) {
+            metrics.recordDocument(operation, signatureMethod, input == null ? 0 : input.count, outcome,
+                    System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Counts the bytes read from a stream.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private long count;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int result = super.read();
+            if (result != -1) {
+                count++;
+            }
+            return result;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int result = super.read(b, off, len);
+            if (result > 0) {
+                count += result;
+            }
+            return result;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long result = super.skip(n);
+            count += result;
+            return result;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
+    /**
+     * Records the time spent in the delegate as key selection phase.
+     */
+    private final class TimedKeySelector extends KeySelector {
+
+        private final KeySelector delegate;
+
+        private TimedKeySelector(KeySelector delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public KeySelectorResult select(KeyInfo keyInfo, Purpose purpose, AlgorithmMethod method,
+                                        XMLCryptoContext context) throws KeySelectorException {
+            long begin = System.nanoTime();
+            try {
+                return delegate.select(keyInfo, purpose, method, context);
+            } finally {
+                long nanos = System.nanoTime() - begin;
+                metrics.recordPhase(operation, Metrics.Phase.KEY_SELECTION, nanos);
+                excluded += nanos;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,242 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.crypto.Data;
+import javax.xml.crypto.OctetStreamData;
+import javax.xml.crypto.URIDereferencer;
+import javax.xml.crypto.URIReference;
+import javax.xml.crypto.URIReferenceException;
+import javax.xml.crypto.XMLCryptoContext;
+import javax.xml.crypto.dom.DOMCryptoContext;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Digests the references of a signature, digesting the resources outside of the signed document in parallel.
+ * <p>
+ * References within the document are left to the XML signature API, because a DOM tree must not be read by several
+ * threads at once.
+ */
+final class ReferenceDigests {
+
+    private static final String[] ID_ATTRIBUTES = {"Id", "ID", "id"};
+
+    private static final String DUPLICATE_IDS_PROPERTY = ReferenceDigests.class.getName() + ".duplicateIds";
+
+    private ReferenceDigests() {
+    }
+
+    /**
+     * @param uri The URI of a reference.
+     * @return Whether the URI points to a resource outside of the signed document.
+     */
+    static boolean isExternal(String uri) {
+        return uri != null && !uri.isEmpty() && !uri.startsWith("#");
+    }
+
+    /**
+     * Digests the given external resources, each one as a task of the given executor.
+     *
+     * @param uris       The URIs of the resources.
+     * @param algorithms The digest algorithms, in the order of the URIs.
+     * @param resolver   The resolver opening the resources.
+     * @param executor   The executor running the digest tasks, or null to digest on the calling thread.
+     * @return The digest values, in the order of the URIs.
+     * @throws IOException in case a resource cannot be read, or the calling thread is interrupted.
+     */
+    static byte[][] digest(List<String> uris, List<DigestAlgorithm> algorithms, final ReferenceResolver resolver,
+                           ExecutorService executor) throws IOException, NoSuchAlgorithmException {
+        byte[][] digests = new byte[uris.size()][];
+        if (executor == null) {
+            for (int i = 0; i < digests.length; i++) {
+                digests[i] = digest(uris.get(i), algorithms.get(i), resolver);
+            }
+            return digests;
+        }
+
+        List<Future<byte[]>> futures = new ArrayList<>(uris.size());
+        try {
+            for (int i = 0; i < digests.length; i++) {
+                final String uri = uris.get(i);
+                final DigestAlgorithm algorithm = algorithms.get(i);
+                futures.add(executor.submit(new Callable<byte[]>() {
+                    @Override
+                    public byte[] call() throws IOException, NoSuchAlgorithmException {
+                        return digest(uri, algorithm, resolver);
+                    }
+                }));
+            }
+            for (int i = 0; i < digests.length; i++) {
+                digests[i] = futures.get(i).get();
+            }
+            return digests;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            } else if (e.getCause() instanceof NoSuchAlgorithmException) {
+                throw (NoSuchAlgorithmException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException exception = new InterruptedIOException("Digesting references has been interrupted");
+            exception.initCause(e);
+            throw exception;
+        } finally {
+            for (Future<byte[]> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private static byte[] digest(String uri, DigestAlgorithm algorithm, ReferenceResolver resolver)
+            throws IOException, NoSuchAlgorithmException {
+        MessageDigest md = EnginePool.acquire(algorithm.getName());
+        try (InputStream in = resolver.resolve(uri)) {
+            if (in == null) {
+                throw new IOException(String.format("Cannot resolve reference %s", uri));
+            }
+            byte[] buffer = BufferPool.acquire();
+            try {
+                for (int n; (n = in.read(buffer)) != -1; ) {
+                    md.update(buffer, 0, n);
+                }
+            } finally {
+                BufferPool.release(buffer);
+            }
+            return md.digest();
+        } finally {
+            EnginePool.release(md);
+        }
+    }
+
+    /**
+     * Returns a dereferencer opening external resources with the given resolver, and leaving all other references to
+     * the default dereferencer.
+     *
+     * @param resolver The resolver opening the resources.
+     * @param fallback The default dereferencer.
+     * @return The dereferencer.
+     */
+    static URIDereferencer dereferencer(final ReferenceResolver resolver, final URIDereferencer fallback) {
+        return new URIDereferencer() {
+            @Override
+            public Data dereference(URIReference reference, XMLCryptoContext context) throws URIReferenceException {
+                String uri = reference.getURI();
+                if (!isExternal(uri)) {
+                    return fallback.dereference(reference, context);
+                }
+                try {
+                    InputStream in = resolver.resolve(uri);
+                    if (in == null) {
+                        throw new URIReferenceException(String.format("Cannot resolve reference %s", uri));
+                    }
+                    return new OctetStreamData(in, uri, null);
+                } catch (IOException e) {
+                    throw new URIReferenceException(e.getMessage(), e);
+                }
+            }
+        };
+    }
+
+    /**
+     * @param namespace The namespace URI of an attribute, or null or empty if it has none.
+     * @param localName The local name of the attribute.
+     * @return Whether the attribute is an Id, ID or id attribute.
+     */
+    static boolean isIdAttribute(String namespace, String localName) {
+        if (namespace != null && !namespace.isEmpty()) {
+            return false;
+        }
+        for (String attribute : ID_ATTRIBUTES) {
+            if (attribute.equals(localName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param element An element.
+     * @return The value of the Id, ID or id attribute of the element, or null if it has none.
+     */
+    static String getId(Element element) {
+        for (String attribute : ID_ATTRIBUTES) {
+            if (element.hasAttributeNS(null, attribute)) {
+                return element.getAttributeNS(null, attribute);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Registers the Id, ID and id attributes of all elements of the given document, so that references by ID find
+     * their elements. IDs carried by more than one element are recorded in the context, see
+     * {@link #isUniqueId(XMLCryptoContext, String)}.
+     *
+     * @param doc     The document.
+     * @param context The crypto context of the signature.
+     */
+    static void registerIds(Document doc, DOMCryptoContext context) {
+        Map<String, Element> ids = new HashMap<>();
+        Set<String> duplicates = new HashSet<>();
+        NodeList elements = doc.getElementsByTagName("*");
+        for (int i = 0, length = elements.getLength(); i < length; i++) {
+            Element element = (Element) elements.item(i);
+            for (String attribute : ID_ATTRIBUTES) {
+                if (element.hasAttributeNS(null, attribute)) {
+                    context.setIdAttributeNS(element, null, attribute);
+                    Element previous = ids.put(element.getAttributeNS(null, attribute), element);
+                    if (previous != null && previous != element) {
+                        duplicates.add(element.getAttributeNS(null, attribute));
+                    }
+                }
+            }
+        }
+        context.setProperty(DUPLICATE_IDS_PROPERTY, duplicates);
+    }
+
+    /**
+     * @param context The crypto context the IDs of the document have been registered with.
+     * @param id      An ID.
+     * @return Whether no more than one element of the document carries the given ID. The element registered for a
+     * duplicate ID is arbitrary, so it must not be used without the checks of the XML signature API.
+     */
+    static boolean isUniqueId(XMLCryptoContext context, String id) {
+        Object duplicates = context.getProperty(DUPLICATE_IDS_PROPERTY);
+        return duplicates instanceof Set && !((Set) duplicates).contains(id);
+    }
+
+}
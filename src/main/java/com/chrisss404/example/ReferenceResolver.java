@@ -0,0 +1,38 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Resolves the URIs of references to resources outside of the signed document, like the attachments of a package.
+ * <p>
+ * Implementations must be safe for use by multiple concurrent threads, since the references of one signature are
+ * digested in parallel.
+ */
+public interface ReferenceResolver {
+
+    /**
+     * Opens the resource referenced by the given URI.
+     *
+     * @param uri The URI of the reference.
+     * @return The content of the resource. The stream is closed by the caller.
+     * @throws IOException in case the resource cannot be read.
+     */
+    InputStream resolve(String uri) throws IOException;
+}
@@ -0,0 +1,256 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import javax.xml.XMLConstants;
+import javax.xml.crypto.dsig.XMLSignature;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Parses only the parts of a signed XML document its signatures need: the Signature elements and the elements their
+ * references point to by ID.
+ * <p>
+ * The input is read twice by a StAX reader. The first pass collects the URIs of the references of all signatures, the
+ * second one builds a DOM subtree for every Signature element and every referenced element, skipping everything else.
+ * Each subtree is placed below a context element carrying the namespaces and xml:* attributes it inherits, so that it
+ * canonicalizes exactly like within the complete document. All context elements are children of a synthetic
+ * {@code fragments} document element.
+ * <p>
+ * As soon as a signature references the whole document, uses an XPointer or has no URI, the document is parsed
+ * completely instead. A referenced ID occurring more than once is rejected, as it could be used to wrap a signed
+ * element. The input is buffered in memory, which is still far less than its DOM tree.
+ */
+public class SelectiveXmlParser implements XmlParser {
+
+    private static final String FRAGMENTS = "fragments";
+
+    private final PooledXmlParser parser;
+
+    /**
+     * Constructs a SelectiveXmlParser falling back to the default parser.
+     */
+    public SelectiveXmlParser() {
+        this(PooledXmlParser.getDefault());
+    }
+
+    /**
+     * Constructs a SelectiveXmlParser.
+     *
+     * @param parser The parser creating the documents, and parsing documents that have to be loaded completely.
+     */
+    public SelectiveXmlParser(PooledXmlParser parser) {
+        this.parser = parser;
+    }
+
+    /**
+     * Creates a DOM document holding the Signature elements and the elements referenced by them.
+     *
+     * @param xmlInputStream The XML input source.
+     * @return The document holding the subtrees below its {@code fragments} element, or the complete document if
+     * a signature references more than single elements.
+     * @throws InvalidDocumentException in case the input is not a well-formed XML document.
+     */
+    @Override
+    public Document parse(InputStream xmlInputStream) {
+        ByteArrayOutputStream xml = new ByteArrayOutputStream();
+        byte[] buffer = BufferPool.acquire();
+        try {
+            for (int n; (n = xmlInputStream.read(buffer)) != -1; ) {
+                xml.write(buffer, 0, n);
+            }
+        } catch (IOException e) {
+            throw new InvalidDocumentException("Invalid XML input", e);
+        } finally {
+            BufferPool.release(buffer);
+        }
+
+        byte[] bytes = xml.toByteArray();
+        Set<String> ids = findReferencedIds(bytes);
+        if (ids == null) {
+            return parser.parse(new ByteArrayInputStream(bytes));
+        }
+        return buildFragments(bytes, ids);
+    }
+
+    /**
+     * Collects the IDs referenced by the signatures of the given document.
+     *
+     * @return The referenced IDs, or null if a signature references more than single elements.
+     */
+    private static Set<String> findReferencedIds(byte[] xml) {
+        Set<String> ids = new HashSet<>();
+        XMLStreamReader reader = StaxReaderFactory.getDefault().createReader(new ByteArrayInputStream(xml));
+        try {
+            int depth = 0;
+            int signatureDepth = -1;
+            int signedInfoDepth = -1;
+            while (reader.hasNext()) {
+                int event = StaxReaderFactory.next(reader);
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    if (signatureDepth < 0) {
+                        if (isSignatureElement(reader, "Signature")) {
+                            signatureDepth = depth;
+                        }
+                    } else if (depth == signatureDepth + 1 && isSignatureElement(reader, "SignedInfo")) {
+                        signedInfoDepth = depth;
+                    } else if (signedInfoDepth > 0 && depth == signedInfoDepth + 1 &&
+                            isSignatureElement(reader, "Reference")) {
+                        String uri = reader.getAttributeValue(null, "URI");
+                        if (uri == null || uri.isEmpty() || uri.startsWith("#xpointer(")) {
+                            return null;
+                        }
+                        if (uri.startsWith("#")) {
+                            ids.add(uri.substring(1));
+                        }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (depth == signedInfoDepth) {
+                        signedInfoDepth = -1;
+                    } else if (depth == signatureDepth) {
+                        signatureDepth = -1;
+                    }
+                    depth--;
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new InvalidDocumentException("Invalid XML input", e);
+        } finally {
+            StaxReaderFactory.closeQuietly(reader);
+        }
+        return ids;
+    }
+
+    /**
+     * Builds the subtrees of all Signature elements and all elements with one of the given IDs.
+     */
+    private Document buildFragments(byte[] xml, Set<String> ids) {
+        Document document = parser.newDocument();
+        Element fragments = document.createElementNS(null, FRAGMENTS);
+        document.appendChild(fragments);
+
+        Deque<Map<String, String>> namespaceScopes = new ArrayDeque<>();
+        Deque<Map<String, String>> xmlAttributeScopes = new ArrayDeque<>();
+        namespaceScopes.push(Collections.<String, String>emptyMap());
+        xmlAttributeScopes.push(Collections.<String, String>emptyMap());
+        Set<String> seen = new HashSet<>();
+        DomFragmentBuilder builder = null;
+
+        XMLStreamReader reader = StaxReaderFactory.getDefault().createReader(new ByteArrayInputStream(xml));
+        try {
+            while (reader.hasNext()) {
+                int event = StaxReaderFactory.next(reader);
+                boolean referenced = false;
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String id = getReferencedId(reader, ids);
+                    if (id != null && !seen.add(id)) {
+                        throw new InvalidDocumentException(String.format("Duplicate ID %s", id));
+                    }
+                    referenced = id != null || isSignatureElement(reader, "Signature");
+                }
+
+                if (builder != null) {
+                    if (builder.append(reader)) {
+                        builder = null;
+                    }
+                } else if (referenced) {
+                    builder = new DomFragmentBuilder(document, fragments, namespaceScopes.peek(),
+                            xmlAttributeScopes.peek(), Long.MAX_VALUE);
+                    builder.append(reader);
+                } else if (event == XMLStreamConstants.START_ELEMENT) {
+                    namespaceScopes.push(getNamespaces(reader, namespaceScopes.peek()));
+                    xmlAttributeScopes.push(getXmlAttributes(reader, xmlAttributeScopes.peek()));
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    namespaceScopes.pop();
+                    xmlAttributeScopes.pop();
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new InvalidDocumentException("Invalid XML input", e);
+        } finally {
+            StaxReaderFactory.closeQuietly(reader);
+        }
+        return document;
+    }
+
+    private static boolean isSignatureElement(XMLStreamReader reader, String localName) {
+        return XMLSignature.XMLNS.equals(reader.getNamespaceURI()) && localName.equals(reader.getLocalName());
+    }
+
+    /**
+     * @return The ID of the current element if it is one of the given IDs, or null.
+     */
+    private static String getReferencedId(XMLStreamReader reader, Set<String> ids) {
+        for (int i = 0, count = reader.getAttributeCount(); i < count; i++) {
+            if (ReferenceDigests.isIdAttribute(reader.getAttributeNamespace(i), reader.getAttributeLocalName(i)) &&
+                    ids.contains(reader.getAttributeValue(i))) {
+                return reader.getAttributeValue(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The namespaces in scope of the current element, mapped from prefix to URI.
+     */
+    private static Map<String, String> getNamespaces(XMLStreamReader reader, Map<String, String> parent) {
+        int count = reader.getNamespaceCount();
+        if (count == 0) {
+            return parent;
+        }
+        Map<String, String> namespaces = new HashMap<>(parent);
+        for (int i = 0; i < count; i++) {
+            String prefix = reader.getNamespacePrefix(i);
+            String uri = reader.getNamespaceURI(i);
+            namespaces.put(prefix == null ? "" : prefix, uri == null ? "" : uri);
+        }
+        return namespaces;
+    }
+
+    /**
+     * @return The xml:* attributes inherited by the children of the current element, mapped from local name to value.
+     */
+    private static Map<String, String> getXmlAttributes(XMLStreamReader reader, Map<String, String> parent) {
+        Map<String, String> xmlAttributes = parent;
+        for (int i = 0, count = reader.getAttributeCount(); i < count; i++) {
+            if (XMLConstants.XML_NS_URI.equals(reader.getAttributeNamespace(i))) {
+                if (xmlAttributes == parent) {
+                    xmlAttributes = new HashMap<>(parent);
+                }
+                xmlAttributes.put(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+            }
+        }
+        return xmlAttributes;
+    }
+
+}
@@ -16,14 +16,41 @@
 
 package com.chrisss404.example;
 
+import java.security.Key;
+import java.security.interfaces.ECKey;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Holds supported signature methods.
+ * <p>
+ * ED25519 requires a Java runtime whose XML signature implementation supports EdDSA, which is the case from Java 21.
  */
 public enum SignatureMethod {
 
     RSA_SHA1("RSA", "http://www.w3.org/2000/09/xmldsig#rsa-sha1"),
     RSA_SHA256("RSA", "http://www.w3.org/2001/04/xmldsig-more#rsa-sha256"),
-    RSA_SHA512("RSA", "http://www.w3.org/2001/04/xmldsig-more#rsa-sha512");
+    RSA_SHA512("RSA", "http://www.w3.org/2001/04/xmldsig-more#rsa-sha512"),
+    ECDSA_SHA256("EC", "http://www.w3.org/2001/04/xmldsig-more#ecdsa-sha256"),
+    ECDSA_SHA384("EC", "http://www.w3.org/2001/04/xmldsig-more#ecdsa-sha384"),
+    ECDSA_SHA512("EC", "http://www.w3.org/2001/04/xmldsig-more#ecdsa-sha512"),
+    ED25519("EdDSA", "http://www.w3.org/2021/04/xmldsig-more#eddsa-ed25519");
+
+    /**
+     * All methods, without the array copy made by every call of values().
+     */
+    private static final SignatureMethod[] METHODS = values();
+
+    private static final Map<String, SignatureMethod> BY_URI;
+
+    static {
+        Map<String, SignatureMethod> byUri = new HashMap<>();
+        for (SignatureMethod method : METHODS) {
+            byUri.put(method.getUri(), method);
+        }
+        BY_URI = Collections.unmodifiableMap(byUri);
+    }
 
     private final String name;
 
@@ -50,11 +77,54 @@ public enum SignatureMethod {
      * @return The corresponding method.
      */
     public static SignatureMethod fromValues(String name, String uri) {
-        for (SignatureMethod method : SignatureMethod.values()) {
-            if (name.equalsIgnoreCase(method.getName()) && uri.equalsIgnoreCase(method.getUri())) {
-                return method;
+        SignatureMethod method = fromUri(uri);
+        return method != null && method.supportsKeyAlgorithm(name) ? method : null;
+    }
+
+    /**
+     * Finds the corresponding enum from the given URI. URIs spelled exactly as in the specification are found in a
+     * lookup table, others by comparing them with all methods, ignoring case.
+     *
+     * @param uri The URI of the wanted algorithm.
+     * @return The corresponding method, or null if the URI is not supported.
+     */
+    public static SignatureMethod fromUri(String uri) {
+        SignatureMethod method = BY_URI.get(uri);
+        if (method != null) {
+            return method;
+        }
+        for (SignatureMethod candidate : METHODS) {
+            if (candidate.getUri().equalsIgnoreCase(uri)) {
+                return candidate;
             }
         }
         return null;
     }
+
+    /**
+     * Chooses the signature method fitting the type of the given key: RSA_SHA256 for RSA keys, the ECDSA method whose
+     * hash matches the size of the curve for EC keys, and ED25519 for EdDSA keys.
+     *
+     * @param key The signing or verification key.
+     * @return The fitting method, or null if the key type is not supported.
+     */
+    public static SignatureMethod forKey(Key key) {
+        String algorithm = key.getAlgorithm();
+        if (RSA_SHA256.supportsKeyAlgorithm(algorithm)) {
+            return RSA_SHA256;
+        } else if (ED25519.supportsKeyAlgorithm(algorithm)) {
+            return ED25519;
+        } else if (ECDSA_SHA256.supportsKeyAlgorithm(algorithm) && key instanceof ECKey) {
+            int fieldSize = ((ECKey) key).getParams().getCurve().getField().getFieldSize();
+            return fieldSize <= 256 ? ECDSA_SHA256 : fieldSize <= 384 ? ECDSA_SHA384 : ECDSA_SHA512;
+        }
+        return null;
+    }
+
+    /**
+     * Keys of the EdDSA family report either the family or the curve as their algorithm.
+     */
+    private boolean supportsKeyAlgorithm(String keyAlgorithm) {
+        return name.equalsIgnoreCase(keyAlgorithm) || this == ED25519 && "Ed25519".equalsIgnoreCase(keyAlgorithm);
+    }
 }
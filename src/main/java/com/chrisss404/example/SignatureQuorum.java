@@ -0,0 +1,75 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+/**
+ * Defines how many of the signatures of a document have to be valid for the document to be accepted.
+ */
+public class SignatureQuorum {
+
+    /**
+     * Accepts a document only if all of its signatures are valid.
+     */
+    public static final SignatureQuorum ALL = new SignatureQuorum(0);
+
+    /**
+     * Accepts a document if at least one of its signatures is valid.
+     */
+    public static final SignatureQuorum ANY = new SignatureQuorum(1);
+
+    private final int required;
+
+    private SignatureQuorum(int required) {
+        this.required = required;
+    }
+
+    /**
+     * Creates a quorum accepting a document if at least the given number of its signatures are valid.
+     *
+     * @param required The number of valid signatures required.
+     * @return The quorum.
+     */
+    public static SignatureQuorum atLeast(int required) {
+        if (required < 1) {
+            throw new IllegalArgumentException("Required number of valid signatures must be positive");
+        }
+        return new SignatureQuorum(required);
+    }
+
+    /**
+     * @param signatureCount The number of signatures of a document.
+     * @return The number of signatures that have to be valid.
+     */
+    public int getRequired(int signatureCount) {
+        return required == 0 ? signatureCount : required;
+    }
+
+    /**
+     * @param validCount     The number of valid signatures of a document.
+     * @param signatureCount The number of signatures of the document.
+     * @return Whether the document is accepted.
+     */
+    public boolean isSatisfied(int validCount, int signatureCount) {
+        return signatureCount > 0 && validCount >= getRequired(signatureCount);
+    }
+
+    @Override
+    public String toString() {
+        return required == 0 ? "all" : required == 1 ? "any" : "at least " + required;
+    }
+
+}
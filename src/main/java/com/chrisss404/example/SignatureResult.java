@@ -0,0 +1,127 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import java.security.cert.X509Certificate;
+
+/**
+ * Holds the outcome of verifying a single signature of a document, together with the identity of its signer.
+ */
+public class SignatureResult {
+
+    private final int index;
+
+    private final VerificationResult.Status status;
+
+    private final X509Certificate signer;
+
+    private final String reason;
+
+    private final Throwable error;
+
+    private SignatureResult(int index, VerificationResult.Status status, X509Certificate signer, String reason,
+                            Throwable error) {
+        this.index = index;
+        this.status = status;
+        this.signer = signer;
+        this.reason = reason;
+        this.error = error;
+    }
+
+    /**
+     * Creates the result of a valid signature.
+     *
+     * @param index  The position of the signature in the document.
+     * @param signer The certificate of the signer.
+     * @return The result.
+     */
+    static SignatureResult valid(int index, X509Certificate signer) {
+        return new SignatureResult(index, VerificationResult.Status.VALID, signer, null, null);
+    }
+
+    /**
+     * Creates the result of a signature rejected by the verifier.
+     *
+     * @param index  The position of the signature in the document.
+     * @param signer The certificate of the signer, or null if no trusted key has been found.
+     * @param cause  The exception describing why the signature has been rejected.
+     * @return The result.
+     */
+    static SignatureResult invalid(int index, X509Certificate signer, XmlVerificationException cause) {
+        return new SignatureResult(index, VerificationResult.Status.INVALID, signer, cause.getMessage(), cause);
+    }
+
+    /**
+     * Creates the result of a signature that could not be verified.
+     *
+     * @param index The position of the signature in the document.
+     * @param cause The unexpected error.
+     * @return The result.
+     */
+    static SignatureResult error(int index, Throwable cause) {
+        return new SignatureResult(index, VerificationResult.Status.ERROR, null, cause.toString(), cause);
+    }
+
+    /**
+     * @return The position of the signature among the Signature elements of the document, in document order.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public VerificationResult.Status getStatus() {
+        return status;
+    }
+
+    public boolean isValid() {
+        return status == VerificationResult.Status.VALID;
+    }
+
+    /**
+     * @return The certificate of the signer, or null if no trusted key has been found.
+     */
+    public X509Certificate getSigner() {
+        return signer;
+    }
+
+    /**
+     * @return The subject of the certificate of the signer, or null if no trusted key has been found.
+     */
+    public String getSignerName() {
+        return signer == null ? null : signer.getSubjectX500Principal().getName();
+    }
+
+    /**
+     * @return The reason why the signature is not valid, or null if it is.
+     */
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * @return The exception that caused the signature to be not valid, or null if it is.
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        String result = "[" + index + "] " + (signer == null ? "" : getSignerName() + " ") + status;
+        return reason == null ? result : result + ": " + reason;
+    }
+}
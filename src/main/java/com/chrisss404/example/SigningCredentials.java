@@ -0,0 +1,249 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import javax.security.auth.DestroyFailedException;
+import javax.security.auth.Destroyable;
+import javax.xml.crypto.dsig.keyinfo.KeyInfo;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Holds the unlocked signing keys of a keystore, so that the deliberately slow password based decryption of a private
+ * key happens once per alias instead of once per signature.
+ * <p>
+ * An alias is resolved on first use. Its private key, certificate and the KeyInfo describing the certificate stay in
+ * memory until the alias is evicted or the registry is closed. Evicted keys are destroyed where the key
+ * implementation supports it; the software keys of the JDK providers do not, so they are only released to the
+ * garbage collector. Closing the registry also overwrites its copy of the keystore password. Instances are safe for
+ * use by multiple concurrent threads. Each alias is unlocked under its own lock, so a slow decryption only holds up
+ * the threads waiting for the same key.
+ */
+public class SigningCredentials implements AutoCloseable {
+
+    private final KeyStore keyStore;
+
+    private final char[] password;
+
+    private final ConcurrentMap<String, Holder> holders = new ConcurrentHashMap<>();
+
+    private volatile boolean closed;
+
+    /**
+     * Constructs a SigningCredentials registry.
+     *
+     * @param keyStore The keystore holding the signing keys.
+     * @param password The password protecting the signing keys. The registry keeps a copy, so the caller may clear
+     *                 the given array.
+     */
+    public SigningCredentials(KeyStore keyStore, char[] password) {
+        this.keyStore = keyStore;
+        this.password = password.clone();
+    }
+
+    /**
+     * Returns the signing key of the given alias, unlocking it on first use.
+     *
+     * @param alias The alias of the signing key.
+     * @return The private key and its certificate.
+     */
+    public KeyStore.PrivateKeyEntry getPrivateKeyEntry(String alias) {
+        return get(alias).getPrivateKeyEntry();
+    }
+
+    /**
+     * Evicts the signing key of the given alias. It is unlocked again on its next use, e.g. after it has been
+     * replaced in the keystore.
+     *
+     * @param alias The alias of the signing key.
+     */
+    public void evict(String alias) {
+        Holder holder = holders.remove(alias);
+        if (holder != null) {
+            holder.evict();
+        }
+    }
+
+    /**
+     * Evicts all signing keys.
+     */
+    public void evictAll() {
+        for (String alias : holders.keySet()) {
+            evict(alias);
+        }
+    }
+
+    /**
+     * @return The number of unlocked signing keys.
+     */
+    public int size() {
+        int size = 0;
+        for (Holder holder : holders.values()) {
+            if (holder.isUnlocked()) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Evicts all signing keys and overwrites the password. The registry cannot be used afterwards.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        // no alias can be registered any more, and evicting waits for the keys being unlocked
+        evictAll();
+        Arrays.fill(password, '\0');
+    }
+
+    /**
+     * Returns the credential of the given alias, unlocking the signing key on first use. Keys are unlocked while
+     * holding the lock of their alias, so that concurrent first uses decrypt a key only once.
+     */
+    Credential get(String alias) {
+        while (true) {
+            if (closed) {
+                throw new IllegalStateException("Signing credentials have been closed");
+            }
+            Holder holder = holders.get(alias);
+            if (holder == null) {
+                holder = register(alias);
+            }
+            Credential credential;
+            try {
+                credential = holder.get();
+            } catch (RuntimeException e) {
+                holders.remove(alias, holder);
+                throw e;
+            }
+            if (credential != null) {
+                return credential;
+            }
+            // the alias has been evicted while this thread was waiting for it, so it is unlocked again
+        }
+    }
+
+    /**
+     * Registers the holder of an alias. Registering excludes closing the registry, so that every registered holder
+     * is evicted by {@link #close()}.
+     */
+    private synchronized Holder register(String alias) {
+        if (closed) {
+            throw new IllegalStateException("Signing credentials have been closed");
+        }
+        Holder created = new Holder(alias);
+        Holder holder = holders.putIfAbsent(alias, created);
+        return holder != null ? holder : created;
+    }
+
+    private Credential unlock(String alias) {
+        try {
+            KeyStore.Entry entry = keyStore.getEntry(alias, new KeyStore.PasswordProtection(password));
+            if (!(entry instanceof KeyStore.PrivateKeyEntry)) {
+                throw new XmlSignatureException(String.format("No signing key with alias %s", alias));
+            }
+            KeyStore.PrivateKeyEntry privateKeyEntry = (KeyStore.PrivateKeyEntry) entry;
+            return new Credential(privateKeyEntry, SigningSession.buildKeyInfo(privateKeyEntry));
+        } catch (GeneralSecurityException e) {
+            throw new XmlSignatureException(String.format("Cannot unlock signing key %s", alias), e);
+        }
+    }
+
+    private static void destroy(Credential credential) {
+        if (credential == null || !(credential.getPrivateKeyEntry().getPrivateKey() instanceof Destroyable)) {
+            return;
+        }
+        Destroyable key = (Destroyable) credential.getPrivateKeyEntry().getPrivateKey();
+        if (!key.isDestroyed()) {
+            try {
+                key.destroy();
+            } catch (DestroyFailedException ignored) {
+                // the key implementation keeps its material until it is garbage collected
+            }
+        }
+    }
+
+    /**
+     * Guards the unlocking of a single alias. Once evicted, it hands out no credential, so that waiting threads
+     * unlock the key again instead of using a destroyed one.
+     */
+    private final class Holder {
+
+        private final String alias;
+
+        private Credential credential;
+
+        private boolean evicted;
+
+        private Holder(String alias) {
+            this.alias = alias;
+        }
+
+        synchronized Credential get() {
+            if (evicted) {
+                return null;
+            }
+            if (credential == null) {
+                if (closed) {
+                    throw new IllegalStateException("Signing credentials have been closed");
+                }
+                credential = unlock(alias);
+            }
+            return credential;
+        }
+
+        synchronized boolean isUnlocked() {
+            return credential != null;
+        }
+
+        synchronized void evict() {
+            evicted = true;
+            destroy(credential);
+            credential = null;
+        }
+    }
+
+    /**
+     * An unlocked signing key together with the KeyInfo describing its certificate.
+     */
+    static final class Credential {
+
+        private final KeyStore.PrivateKeyEntry privateKeyEntry;
+
+        private final KeyInfo keyInfo;
+
+        private Credential(KeyStore.PrivateKeyEntry privateKeyEntry, KeyInfo keyInfo) {
+            this.privateKeyEntry = privateKeyEntry;
+            this.keyInfo = keyInfo;
+        }
+
+        KeyStore.PrivateKeyEntry getPrivateKeyEntry() {
+            return privateKeyEntry;
+        }
+
+        KeyInfo getKeyInfo() {
+            return keyInfo;
+        }
+    }
+
+}
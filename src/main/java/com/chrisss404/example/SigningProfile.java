@@ -0,0 +1,144 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Configures how the XmlSigner canonicalizes SignedInfo and the signed content.
+ * <p>
+ * Exclusive canonicalization renders only the namespaces an element visibly uses, instead of every namespace in scope,
+ * which makes it cheaper on deeply nested, namespace heavy documents and keeps signed fragments valid when they are
+ * moved into another document.
+ */
+public class SigningProfile {
+
+    /**
+     * Canonicalizes SignedInfo inclusively and digests the signed content with the implicit inclusive
+     * canonicalization of the enveloped transform.
+     */
+    public static final SigningProfile INCLUSIVE = new SigningProfile(Canonicalization.INCLUSIVE, null);
+
+    /**
+     * Canonicalizes SignedInfo and the signed content exclusively, without comments.
+     */
+    public static final SigningProfile EXCLUSIVE = new SigningProfile(Canonicalization.EXCLUSIVE,
+            Canonicalization.EXCLUSIVE);
+
+    private final Canonicalization signedInfoCanonicalization;
+
+    private final Canonicalization referenceCanonicalization;
+
+    private final List<String> inclusivePrefixes;
+
+    private final boolean preCanonical;
+
+    /**
+     * Constructs a SigningProfile.
+     *
+     * @param signedInfoCanonicalization The canonicalization of SignedInfo.
+     * @param referenceCanonicalization  The canonicalization transform of the references to the document and its
+     *                                   elements, or null to rely on the implicit inclusive canonicalization.
+     */
+    public SigningProfile(Canonicalization signedInfoCanonicalization, Canonicalization referenceCanonicalization) {
+        this(signedInfoCanonicalization, referenceCanonicalization, Collections.<String>emptyList(), false);
+    }
+
+    /**
+     * Constructs a SigningProfile.
+     *
+     * @param signedInfoCanonicalization The canonicalization of SignedInfo.
+     * @param referenceCanonicalization  The canonicalization transform of the references to the document and its
+     *                                   elements, or null to rely on the implicit inclusive canonicalization.
+     * @param inclusivePrefixes          The prefixes whose namespaces exclusive canonicalization renders like
+     *                                   inclusive canonicalization does. The default namespace has the prefix
+     *                                   "#default".
+     * @param preCanonical               Whether the documents signed without loading them into memory are already in
+     *                                   the canonical form of the references, so that their bytes are digested as
+     *                                   they are.
+     */
+    public SigningProfile(Canonicalization signedInfoCanonicalization, Canonicalization referenceCanonicalization,
+                          List<String> inclusivePrefixes, boolean preCanonical) {
+        if (signedInfoCanonicalization == null) {
+            throw new IllegalArgumentException("SignedInfo canonicalization cannot be null");
+        }
+        if (!inclusivePrefixes.isEmpty() && !signedInfoCanonicalization.isExclusive() &&
+                (referenceCanonicalization == null || !referenceCanonicalization.isExclusive())) {
+            throw new IllegalArgumentException("Inclusive prefixes require exclusive canonicalization");
+        }
+        this.signedInfoCanonicalization = signedInfoCanonicalization;
+        this.referenceCanonicalization = referenceCanonicalization;
+        this.inclusivePrefixes = Collections.unmodifiableList(new ArrayList<>(inclusivePrefixes));
+        this.preCanonical = preCanonical;
+    }
+
+    public Canonicalization getSignedInfoCanonicalization() {
+        return signedInfoCanonicalization;
+    }
+
+    /**
+     * @return The canonicalization transform of the references to the document and its elements, or null if there is
+     * none.
+     */
+    public Canonicalization getReferenceCanonicalization() {
+        return referenceCanonicalization;
+    }
+
+    /**
+     * @return The canonicalization the digests of the references to the document and its elements are computed over.
+     */
+    Canonicalization getEffectiveReferenceCanonicalization() {
+        return referenceCanonicalization != null ? referenceCanonicalization : Canonicalization.INCLUSIVE;
+    }
+
+    public List<String> getInclusivePrefixes() {
+        return inclusivePrefixes;
+    }
+
+    public boolean isPreCanonical() {
+        return preCanonical;
+    }
+
+    /**
+     * Returns a copy of this profile whose exclusive canonicalizations render the namespaces of the given prefixes
+     * like inclusive canonicalization does, e.g. {@code EXCLUSIVE.withInclusivePrefixes("soap")}.
+     *
+     * @param prefixes The prefixes, "#default" for the default namespace.
+     * @return The extended profile.
+     */
+    public SigningProfile withInclusivePrefixes(String... prefixes) {
+        List<String> extended = new ArrayList<>(inclusivePrefixes);
+        extended.addAll(Arrays.asList(prefixes));
+        return new SigningProfile(signedInfoCanonicalization, referenceCanonicalization, extended, preCanonical);
+    }
+
+    /**
+     * Returns a copy of this profile for producers emitting documents that are already in the canonical form of the
+     * references. Such documents are signed without loading them into memory by digesting and copying their bytes as
+     * they are, without parsing them. The bytes are not checked to be canonical; if they are not, the signature does
+     * not verify.
+     *
+     * @return The profile for pre-canonical input.
+     */
+    public SigningProfile withPreCanonicalInput() {
+        return new SigningProfile(signedInfoCanonicalization, referenceCanonicalization, inclusivePrefixes, true);
+    }
+
+}
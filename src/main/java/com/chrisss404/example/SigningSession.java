@@ -0,0 +1,617 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.crypto.MarshalException;
+import javax.xml.crypto.dsig.CanonicalizationMethod;
+import javax.xml.crypto.dsig.DigestMethod;
+import javax.xml.crypto.dsig.Reference;
+import javax.xml.crypto.dsig.SignedInfo;
+import javax.xml.crypto.dsig.Transform;
+import javax.xml.crypto.dsig.XMLSignature;
+import javax.xml.crypto.dsig.XMLSignatureException;
+import javax.xml.crypto.dsig.XMLSignatureFactory;
+import javax.xml.crypto.dsig.dom.DOMSignContext;
+import javax.xml.crypto.dsig.keyinfo.KeyInfo;
+import javax.xml.crypto.dsig.keyinfo.KeyInfoFactory;
+import javax.xml.crypto.dsig.keyinfo.X509Data;
+import javax.xml.crypto.dsig.spec.C14NMethodParameterSpec;
+import javax.xml.crypto.dsig.spec.ExcC14NParameterSpec;
+import javax.xml.crypto.dsig.spec.TransformParameterSpec;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.security.DigestOutputStream;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * A SigningSession signs any number of documents with one private key and one set of algorithms.
+ * <p>
+ * All parts of the signature that are identical for every document, like the algorithm descriptions and the
+ * KeyInfo holding the certificate, are built once when the session is opened. A session caches signature engines
+ * and its output buffer and is therefore not safe for use by multiple concurrent threads; open one session per thread
+ * instead.
+ */
+public class SigningSession {
+
+    /**
+     * The maximum number of references per signature accepted by verifiers with secure validation enabled, the
+     * default of the JDK.
+     */
+    static final int MAXIMUM_REFERENCES = 30;
+
+    private final XMLSignatureFactory sf = XmlSignatureFactories.get();
+
+    private final XmlParser parser;
+
+    private final Metrics metrics;
+
+    private final SignatureMethod method;
+
+    private final SigningProfile profile;
+
+    private final PrivateKey privateKey;
+
+    private final CanonicalizationMethod canonicalizationMethod;
+
+    private final javax.xml.crypto.dsig.SignatureMethod signatureMethod;
+
+    private final DigestMethod digestMethod;
+
+    private final KeyInfo keyInfo;
+
+    private final ReferenceResolver resolver;
+
+    private final ExecutorService digestExecutor;
+
+    private final DigestCache digestCache;
+
+    private final Utf8Output output = new Utf8Output(null);
+
+    /**
+     * Constructs a SigningSession with all its dependencies.
+     *
+     * @param parser          The parser used to load the documents to sign.
+     * @param signatureMethod The method used to sign the documents, or null to choose it from the type of the key.
+     * @param privateKeyEntry The private key used to sign the documents.
+     * @param metrics         The metrics receiving the timings of all signings.
+     * @param resolver        The resolver opening the resources of external references, or null.
+     * @param digestExecutor  The executor digesting external references in parallel, or null.
+     * @param digestCache     The cache of the digest values of elements referenced by ID, or null.
+     * @param profile         The canonicalization of SignedInfo and the signed content.
+     * @param keyInfo         The KeyInfo describing the certificate of the private key, or null to build it.
+     */
+    SigningSession(XmlParser parser, SignatureMethod signatureMethod, KeyStore.PrivateKeyEntry privateKeyEntry,
+                   Metrics metrics, ReferenceResolver resolver, ExecutorService digestExecutor,
+                   DigestCache digestCache, SigningProfile profile, KeyInfo keyInfo) {
+        try {
+            this.parser = parser;
+            this.profile = profile;
+            this.metrics = metrics;
+            this.resolver = resolver;
+            this.digestExecutor = digestExecutor;
+            this.digestCache = digestCache;
+            this.privateKey = privateKeyEntry.getPrivateKey();
+            this.method = signatureMethod != null ? signatureMethod : SignatureMethod.forKey(privateKey);
+            if (method == null) {
+                throw new NoSuchAlgorithmException(String.format("No signature method for %s keys",
+                        privateKey.getAlgorithm()));
+            }
+            this.canonicalizationMethod = sf.newCanonicalizationMethod(
+                    profile.getSignedInfoCanonicalization().getUri(),
+                    newParameterSpec(profile.getSignedInfoCanonicalization()));
+            this.signatureMethod = sf.newSignatureMethod(method.getUri(), null);
+            this.digestMethod = sf.newDigestMethod(DigestMethod.SHA256, null);
+            this.keyInfo = keyInfo != null ? keyInfo : buildKeyInfo(privateKeyEntry);
+        } catch (InvalidAlgorithmParameterException | NoSuchAlgorithmException e) {
+            throw new XmlSignatureException("Failed signing XML", e);
+        }
+    }
+
+    /**
+     * Signs the given xml document.
+     *
+     * @param xmlToSign The XML document to sign.
+     * @return The signed XML document.
+     */
+    public Document sign(InputStream xmlToSign) {
+        PhaseTimer timer = startTimer();
+        try {
+            Document docToSign = signDocument(xmlToSign, timer);
+            timer.succeed();
+            return docToSign;
+        } catch (InvalidAlgorithmParameterException | InvalidDocumentException | MarshalException |
+                NoSuchAlgorithmException | XMLSignatureException e) {
+            timer.fail(e);
+            throw new XmlSignatureException("Failed signing XML", e);
+        } catch (RuntimeException e) {
+            timer.fail(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Signs the given xml document with an enveloped signature covering the whole document and the given further
+     * references.
+     * <p>
+     * A reference starting with # points to the element of the document whose Id, ID or id attribute has the given
+     * value. Any other reference points to an external resource, which is opened by the reference resolver. External
+     * resources are digested in parallel on the digest executor. As verifiers with secure validation enabled, the
+     * default of the JDK, accept no more than 30 references per signature, at most 29 further references are allowed.
+     *
+     * @param xmlToSign  The XML document to sign.
+     * @param references The URIs of the further references.
+     * @return The signed XML document.
+     */
+    public Document sign(InputStream xmlToSign, List<String> references) {
+        PhaseTimer timer = startTimer();
+        try {
+            Document docToSign = parser.parse(timer.count(xmlToSign));
+            timer.phase(Metrics.Phase.PARSE);
+
+            signReferences(docToSign, true, references, timer);
+
+            timer.succeed();
+            return docToSign;
+        } catch (InvalidAlgorithmParameterException | InvalidDocumentException | IOException | MarshalException |
+                NoSuchAlgorithmException | XMLSignatureException e) {
+            timer.fail(e);
+            throw new XmlSignatureException("Failed signing XML", e);
+        } catch (RuntimeException e) {
+            timer.fail(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Signs every element of the given xml document that has the given local name and an Id, ID or id attribute, each
+     * by its own reference within one signature.
+     * <p>
+     * Content outside of these elements is not signed. With a digest cache, elements that have not changed since they
+     * were last signed or verified are not canonicalized and digested again. As verifiers with secure validation
+     * enabled, the default of the JDK, accept no more than 30 references per signature, at most 30 elements are signed.
+     *
+     * @param xmlToSign The XML document to sign.
+     * @param localName The local name of the elements to sign, in any namespace.
+     * @return The signed XML document.
+     */
+    public Document signElements(InputStream xmlToSign, String localName) {
+        PhaseTimer timer = startTimer();
+        try {
+            Document docToSign = parser.parse(timer.count(xmlToSign));
+            timer.phase(Metrics.Phase.PARSE);
+
+            List<String> references = new ArrayList<>();
+            NodeList elements = docToSign.getElementsByTagNameNS("*", localName);
+            for (int i = 0, length = elements.getLength(); i < length; i++) {
+                String id = ReferenceDigests.getId((Element) elements.item(i));
+                if (id != null) {
+                    references.add("#" + id);
+                }
+            }
+            if (references.isEmpty()) {
+                throw new InvalidDocumentException(String.format("No element %s with an ID found", localName));
+            }
+            signReferences(docToSign, false, references, timer);
+
+            timer.succeed();
+            return docToSign;
+        } catch (InvalidAlgorithmParameterException | InvalidDocumentException | IOException | MarshalException |
+                NoSuchAlgorithmException | XMLSignatureException e) {
+            timer.fail(e);
+            throw new XmlSignatureException("Failed signing XML", e);
+        } catch (RuntimeException e) {
+            timer.fail(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Creates a detached signature of the given external resources. The resources are opened by the reference
+     * resolver and digested in parallel on the digest executor.
+     *
+     * @param references The URIs of the external resources.
+     * @return A document holding nothing but the signature.
+     */
+    public Document signDetached(List<String> references) {
+        PhaseTimer timer = startTimer();
+        try {
+            if (references.isEmpty()) {
+                throw new IllegalArgumentException("A detached signature needs at least one reference");
+            }
+            checkReferenceCount(references.size());
+            List<Reference> refs = buildReferences(references, null, null);
+            timer.phase(Metrics.Phase.DIGEST);
+
+            Document signatureDocument = PooledXmlParser.getDefault().newDocument();
+            sf.newXMLSignature(buildSignedInfo(refs), keyInfo).sign(new DOMSignContext(privateKey, signatureDocument));
+            timer.phase(Metrics.Phase.SIGNATURE);
+
+            timer.succeed();
+            return signatureDocument;
+        } catch (InvalidAlgorithmParameterException | IOException | MarshalException | NoSuchAlgorithmException |
+                XMLSignatureException e) {
+            timer.fail(e);
+            throw new XmlSignatureException("Failed signing XML", e);
+        } catch (RuntimeException e) {
+            timer.fail(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Signs the given xml document and writes it to the given stream.
+     * <p>
+     * Unlike {@link #sign(InputStream, OutputStream)} the document is loaded into memory and kept as it is, including
+     * its comments. The signed document is encoded as UTF-8 straight into the stream, without an XSLT identity
+     * transformation and without an intermediate copy. The stream is neither flushed nor closed.
+     *
+     * @param xmlToSign The XML document to sign.
+     * @param signedXml The stream receiving the signed XML document.
+     */
+    public void signAndSerialize(InputStream xmlToSign, OutputStream signedXml) {
+        PhaseTimer timer = startTimer();
+        try {
+            Document signedDocument = signDocument(xmlToSign, timer);
+
+            output.reset(signedXml);
+            try {
+                output.writeRaw("<?xml version=\"");
+                output.writeRaw(signedDocument.getXmlVersion());
+                output.writeRaw("\" encoding=\"UTF-8\"?>");
+                new DomSerializer(output).serialize(signedDocument, Collections.<String, String>emptyMap());
+                output.flush();
+            } finally {
+                output.reset(null);
+            }
+            timer.phase(Metrics.Phase.SERIALIZE);
+
+            timer.succeed();
+        } catch (InvalidAlgorithmParameterException | InvalidDocumentException | IOException | MarshalException |
+                NoSuchAlgorithmException | XMLSignatureException e) {
+            timer.fail(e);
+            throw new XmlSignatureException("Failed signing XML", e);
+        } catch (RuntimeException e) {
+            timer.fail(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Signs the given xml document and writes it to the given channel.
+     *
+     * @param xmlToSign The XML document to sign.
+     * @param signedXml The channel receiving the signed XML document.
+     * @see #signAndSerialize(InputStream, OutputStream)
+     */
+    public void signAndSerialize(InputStream xmlToSign, WritableByteChannel signedXml) {
+        signAndSerialize(xmlToSign, Channels.newOutputStream(signedXml));
+    }
+
+    /**
+     * Signs the given xml document without loading it into memory.
+     * <p>
+     * The document is written to the output in the canonical form of the references, with the enveloped signature
+     * inserted before the closing tag of the document element. Comments are dropped unless the signing profile
+     * canonicalizes with comments. If the signing profile declares the input as pre-canonical, its bytes are digested
+     * and copied as they are instead of being parsed and canonicalized.
+     *
+     * @param xmlToSign The XML document to sign.
+     * @param signedXml The stream receiving the signed XML document.
+     */
+    public void sign(InputStream xmlToSign, OutputStream signedXml) {
+        PhaseTimer timer = startTimer();
+        MessageDigest md = null;
+        try {
+            md = EnginePool.acquire(DigestAlgorithm.SHA256.getName());
+            ByteArrayOutputStream trailer = new ByteArrayOutputStream();
+            DomFragmentBuilder context;
+            if (profile.isPreCanonical()) {
+                CanonicalInputCopier copier = new CanonicalInputCopier(new DigestOutputStream(signedXml, md),
+                        new DigestOutputStream(trailer, md));
+                copier.copy(timer.count(xmlToSign));
+                context = new DomFragmentBuilder(PooledXmlParser.getDefault().newDocument(),
+                        copier.getNamespacesInScope(), copier.getXmlAttributesInScope(), 0);
+            } else {
+                context = canonicalize(timer.count(xmlToSign), new DigestOutputStream(signedXml, md),
+                        new DigestOutputStream(trailer, md));
+            }
+            timer.phase(Metrics.Phase.DIGEST);
+
+            Reference ref = sf.newReference("", digestMethod, newTransforms(), null, null, md.digest());
+            XMLSignature signature = sf.newXMLSignature(buildSignedInfo(Collections.singletonList(ref)), keyInfo);
+
+            DOMSignContext dsc = new DOMSignContext(privateKey, context.getContextElement());
+            signature.sign(dsc);
+            timer.phase(Metrics.Phase.SIGNATURE);
+
+            output.reset(signedXml);
+            try {
+                new DomSerializer(output).serialize((Element) context.getContextElement().getLastChild(),
+                        context.getNamespaces());
+                output.flush();
+            } finally {
+                output.reset(null);
+            }
+            trailer.writeTo(signedXml);
+            timer.phase(Metrics.Phase.SERIALIZE);
+
+            timer.succeed();
+        } catch (InvalidAlgorithmParameterException | InvalidDocumentException | IOException | MarshalException |
+                NoSuchAlgorithmException | XMLSignatureException e) {
+            timer.fail(e);
+            throw new XmlSignatureException("Failed signing XML", e);
+        } catch (RuntimeException e) {
+            timer.fail(e);
+            throw e;
+        } finally {
+            EnginePool.release(md);
+        }
+    }
+
+    /**
+     * Writes the canonical form of the given document, up to the closing tag of the document element to the body and
+     * from there on to the trailer.
+     *
+     * @return The context the enveloped signature is built in, carrying the namespaces and xml:* attributes the
+     * canonical form has in scope of the document element.
+     */
+    private DomFragmentBuilder canonicalize(InputStream xmlToSign, OutputStream body, OutputStream trailer)
+            throws IOException {
+        Canonicalization canonicalization = profile.getEffectiveReferenceCanonicalization();
+        StreamingCanonicalizer canonicalizer = new StreamingCanonicalizer(body, canonicalization,
+                canonicalization.isExclusive() ? profile.getInclusivePrefixes() : Collections.<String>emptyList());
+        Map<String, String> namespaces = null;
+        Map<String, String> xmlAttributes = null;
+
+        XMLStreamReader reader = StaxReaderFactory.getDefault().createReader(xmlToSign);
+        try {
+            for (int depth = 0; reader.hasNext(); ) {
+                int event = StaxReaderFactory.next(reader);
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                } else if (event == XMLStreamConstants.END_ELEMENT && --depth == 0) {
+                    namespaces = canonicalizer.getRenderedNamespaces();
+                    xmlAttributes = canonicalizer.getXmlAttributesInScope();
+                    canonicalizer.redirect(trailer);
+                }
+                canonicalizer.write(reader);
+            }
+            canonicalizer.flush();
+        } catch (XMLStreamException e) {
+            throw new InvalidDocumentException("Invalid XML input", e);
+        } finally {
+            StaxReaderFactory.closeQuietly(reader);
+            canonicalizer.release();
+        }
+
+        if (namespaces == null) {
+            throw new InvalidDocumentException("Invalid XML input");
+        }
+        return new DomFragmentBuilder(PooledXmlParser.getDefault().newDocument(), namespaces, xmlAttributes, 0);
+    }
+
+    /**
+     * Signs all given xml documents.
+     *
+     * @param documents The XML documents to sign.
+     * @param handler   The handler receiving the signed XML documents, in the order of the input.
+     * @return The statistics of the batch.
+     */
+    public BatchStatistics signAll(Iterable<? extends InputStream> documents, SignedDocumentHandler handler) {
+        return signAll(documents.iterator(), handler);
+    }
+
+    /**
+     * Signs all given xml documents.
+     *
+     * @param documents The XML documents to sign.
+     * @param handler   The handler receiving the signed XML documents, in the order of the input.
+     * @return The statistics of the batch.
+     */
+    public BatchStatistics signAll(Iterator<? extends InputStream> documents, SignedDocumentHandler handler) {
+        long start = System.nanoTime();
+        int count = 0;
+        while (documents.hasNext()) {
+            handler.handle(sign(documents.next()));
+            count++;
+        }
+        return new BatchStatistics(count, System.nanoTime() - start);
+    }
+
+    private Document signDocument(InputStream xmlToSign, PhaseTimer timer) throws InvalidAlgorithmParameterException,
+            InvalidDocumentException, MarshalException, NoSuchAlgorithmException, XMLSignatureException {
+        Document docToSign = parser.parse(timer.count(xmlToSign));
+        timer.phase(Metrics.Phase.PARSE);
+
+        Reference ref = sf.newReference("", digestMethod, newTransforms(), null, null);
+        XMLSignature signature = sf.newXMLSignature(buildSignedInfo(Collections.singletonList(ref)), keyInfo);
+
+        DOMSignContext dsc = new DOMSignContext(privateKey, docToSign.getDocumentElement());
+        signature.sign(dsc);
+        timer.phase(Metrics.Phase.SIGNATURE);
+        return docToSign;
+    }
+
+    private PhaseTimer startTimer() {
+        PhaseTimer timer = PhaseTimer.start(metrics, Metrics.Operation.SIGN);
+        timer.setSignatureMethod(method);
+        return timer;
+    }
+
+    /**
+     * The enveloped transform remembers the signature element it was marshalled into, so every document needs its
+     * own instance.
+     */
+    private List<Transform> newTransforms() throws InvalidAlgorithmParameterException,
+            NoSuchAlgorithmException {
+        Transform enveloped = sf.newTransform(Transform.ENVELOPED, (TransformParameterSpec) null);
+        Canonicalization canonicalization = profile.getReferenceCanonicalization();
+        if (canonicalization == null) {
+            return Collections.singletonList(enveloped);
+        }
+        return Arrays.asList(enveloped, sf.newTransform(canonicalization.getUri(), newParameterSpec(canonicalization)));
+    }
+
+    /**
+     * @return The transforms of the references to elements of the document, or null if there are none.
+     */
+    private List<Transform> newElementTransforms() throws InvalidAlgorithmParameterException,
+            NoSuchAlgorithmException {
+        Canonicalization canonicalization = profile.getReferenceCanonicalization();
+        return canonicalization == null ? null : Collections.singletonList(
+                sf.newTransform(canonicalization.getUri(), newParameterSpec(canonicalization)));
+    }
+
+    private C14NMethodParameterSpec newParameterSpec(Canonicalization canonicalization) {
+        return canonicalization.isExclusive() && !profile.getInclusivePrefixes().isEmpty() ?
+                new ExcC14NParameterSpec(profile.getInclusivePrefixes()) : null;
+    }
+
+    private void signReferences(Document docToSign, boolean enveloped, List<String> references, PhaseTimer timer)
+            throws InvalidAlgorithmParameterException, IOException, MarshalException, NoSuchAlgorithmException,
+            XMLSignatureException {
+        checkReferenceCount(references.size() + (enveloped ? 1 : 0));
+        DOMSignContext dsc = new DOMSignContext(privateKey, docToSign.getDocumentElement());
+        ReferenceDigests.registerIds(docToSign, dsc);
+
+        List<Reference> refs = new ArrayList<>(references.size() + 1);
+        if (enveloped) {
+            refs.add(sf.newReference("", digestMethod, newTransforms(), null, null));
+        }
+        String[] fingerprints = new String[references.size()];
+        refs.addAll(buildReferences(references, dsc, fingerprints));
+        timer.phase(Metrics.Phase.DIGEST);
+
+        sf.newXMLSignature(buildSignedInfo(refs), keyInfo).sign(dsc);
+        timer.phase(Metrics.Phase.SIGNATURE);
+
+        for (int i = 0, offset = refs.size() - fingerprints.length; i < fingerprints.length; i++) {
+            if (fingerprints[i] != null) {
+                digestCache.put(fingerprints[i], refs.get(offset + i).getDigestValue());
+            }
+        }
+    }
+
+    private static void checkReferenceCount(int count) {
+        if (count > MAXIMUM_REFERENCES) {
+            throw new XmlSignatureException(String.format(
+                    "A signature cannot have more than %d references, got %d", MAXIMUM_REFERENCES, count));
+        }
+    }
+
+    /**
+     * Builds the given references. External resources are digested up front, so that the signature only digests the
+     * references within the document. Elements found in the digest cache are not digested at all; the fingerprints
+     * of all others are stored, so that their digest values can be cached once the signature has computed them.
+     */
+    private List<Reference> buildReferences(List<String> uris, DOMSignContext dsc, String[] fingerprints)
+            throws InvalidAlgorithmParameterException, IOException, NoSuchAlgorithmException {
+        List<String> externalUris = new ArrayList<>();
+        for (String uri : uris) {
+            if (ReferenceDigests.isExternal(uri)) {
+                externalUris.add(uri);
+            }
+        }
+        if (!externalUris.isEmpty() && resolver == null) {
+            throw new IOException(String.format("Cannot resolve reference %s", externalUris.get(0)));
+        }
+        byte[][] digests = ReferenceDigests.digest(externalUris,
+                Collections.nCopies(externalUris.size(), DigestAlgorithm.SHA256), resolver, digestExecutor);
+
+        List<Reference> refs = new ArrayList<>(uris.size());
+        int external = 0;
+        for (int i = 0; i < uris.size(); i++) {
+            String uri = uris.get(i);
+            if (ReferenceDigests.isExternal(uri)) {
+                refs.add(sf.newReference(uri, digestMethod, null, null, null, digests[external++]));
+                continue;
+            }
+
+            List<Transform> transforms = newElementTransforms();
+            // like the verifier, only cache the digests of references without transforms
+            Element element = digestCache == null || dsc == null || !uri.startsWith("#") || transforms != null ?
+                    null : dsc.getElementById(uri.substring(1));
+            // the signature is appended to the document element, which therefore changes while being signed
+            if (element != null && element != dsc.getParent()) {
+                String fingerprint = DigestCache.fingerprint(element, digestMethod.getAlgorithm());
+                byte[] digestValue = digestCache.get(fingerprint);
+                if (digestValue != null) {
+                    refs.add(sf.newReference(uri, digestMethod, null, null, null, digestValue));
+                    continue;
+                }
+                fingerprints[i] = fingerprint;
+            }
+            refs.add(sf.newReference(uri, digestMethod, transforms, null, null));
+        }
+        return refs;
+    }
+
+    private SignedInfo buildSignedInfo(List<Reference> refs) {
+        return sf.newSignedInfo(canonicalizationMethod, signatureMethod, refs);
+    }
+
+    /**
+     * Builds the KeyInfo describing the certificate of the given private key. KeyInfo instances are immutable and
+     * may be shared by sessions.
+     */
+    static KeyInfo buildKeyInfo(KeyStore.PrivateKeyEntry privateKeyEntry) {
+        X509Certificate cert = (X509Certificate) privateKeyEntry.getCertificate();
+        List x509Content = Arrays.asList(cert.getSubjectX500Principal().getName(), cert);
+
+        KeyInfoFactory kif = XmlSignatureFactories.get().getKeyInfoFactory();
+        X509Data xd = kif.newX509Data(x509Content);
+
+        return kif.newKeyInfo(Collections.singletonList(xd));
+    }
+
+    /**
+     * Receives the documents signed by a batch.
+     */
+    public interface SignedDocumentHandler {
+
+        /**
+         * Handles a signed document.
+         *
+         * @param signedDocument The signed XML document.
+         */
+        void handle(Document signedDocument);
+    }
+
+}
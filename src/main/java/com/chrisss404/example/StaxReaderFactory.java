@@ -0,0 +1,98 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+
+/**
+ * Creates securely configured StAX readers from a single factory.
+ * <p>
+ * Like {@link PooledXmlParser}, the readers neither accept document type declarations nor resolve external
+ * entities.
+ */
+final class StaxReaderFactory {
+
+    private static final StaxReaderFactory DEFAULT_INSTANCE = new StaxReaderFactory();
+
+    private final XMLInputFactory factory;
+
+    private StaxReaderFactory() {
+        factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        factory.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, true);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    /**
+     * @return The factory instance shared by default.
+     */
+    static StaxReaderFactory getDefault() {
+        return DEFAULT_INSTANCE;
+    }
+
+    /**
+     * Creates a reader for the given XML input.
+     *
+     * @param xmlInputStream The XML input source.
+     * @return The reader.
+     * @throws InvalidDocumentException in case the input cannot be read.
+     */
+    XMLStreamReader createReader(InputStream xmlInputStream) {
+        try {
+            synchronized (factory) {
+                return factory.createXMLStreamReader(xmlInputStream);
+            }
+        } catch (XMLStreamException e) {
+            throw new InvalidDocumentException("Invalid XML input", e);
+        }
+    }
+
+    /**
+     * Advances the given reader to the next event, rejecting document type declarations.
+     *
+     * @param reader The reader to advance.
+     * @return The type of the next event.
+     * @throws XMLStreamException in case the input is not well-formed.
+     */
+    static int next(XMLStreamReader reader) throws XMLStreamException {
+        int event = reader.next();
+        if (event == XMLStreamConstants.DTD) {
+            throw new InvalidDocumentException("Invalid XML input");
+        }
+        return event;
+    }
+
+    /**
+     * Closes the given reader, ignoring any errors.
+     *
+     * @param reader The reader to close.
+     */
+    static void closeQuietly(XMLStreamReader reader) {
+        try {
+            reader.close();
+        } catch (XMLStreamException ignored) {
+            // nothing left to release
+        }
+    }
+
+}
@@ -0,0 +1,339 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes the canonical form (Canonical XML 1.0 or Exclusive XML Canonicalization 1.0) of the events delivered by a
+ * StAX reader.
+ * <p>
+ * Only the open namespace and xml:* attribute scopes are kept in memory, so documents of any size can be
+ * canonicalized with constant memory. Events that are not passed to {@link #write(XMLStreamReader)} are not part of
+ * the canonical form, which is how the enveloped signature is excluded.
+ * <p>
+ * The canonical form is written in blocks of the size of a pooled buffer, so that digests are updated with large
+ * blocks. The buffer must be handed back by {@link #release()}.
+ */
+final class StreamingCanonicalizer {
+
+    private static final Comparator<String[]> ATTRIBUTE_ORDER = new Comparator<String[]>() {
+        @Override
+        public int compare(String[] a, String[] b) {
+            int result = a[0].compareTo(b[0]);
+            return result != 0 ? result : a[1].compareTo(b[1]);
+        }
+    };
+
+    private final byte[] buffer;
+
+    private final Utf8Output out;
+
+    private final boolean withComments;
+
+    private final boolean exclusive;
+
+    private final Set<String> inclusivePrefixes;
+
+    private int depth;
+
+    private boolean afterDocumentElement;
+
+    private final Deque<Map<String, String>> namespaceScopes = new ArrayDeque<>();
+
+    private final Deque<Map<String, String>> xmlAttributeScopes = new ArrayDeque<>();
+
+    private final Deque<Map<String, String>> renderedScopes = new ArrayDeque<>();
+
+    private final List<String[]> namespaces = new ArrayList<>();
+
+    private final List<String[]> attributes = new ArrayList<>();
+
+    /**
+     * Constructs a StreamingCanonicalizer.
+     *
+     * @param out          The stream receiving the canonical form.
+     * @param withComments Whether comments are part of the canonical form.
+     */
+    StreamingCanonicalizer(OutputStream out, boolean withComments) {
+        this(out, withComments ? Canonicalization.INCLUSIVE_WITH_COMMENTS : Canonicalization.INCLUSIVE,
+                Collections.<String>emptyList());
+    }
+
+    /**
+     * Constructs a StreamingCanonicalizer.
+     *
+     * @param out               The stream receiving the canonical form.
+     * @param canonicalization  The canonicalization algorithm.
+     * @param inclusivePrefixes The prefixes whose namespaces exclusive canonicalization renders like inclusive
+     *                          canonicalization does, "#default" for the default namespace.
+     */
+    StreamingCanonicalizer(OutputStream out, Canonicalization canonicalization, List<String> inclusivePrefixes) {
+        this.buffer = BufferPool.acquire();
+        this.out = new Utf8Output(out, buffer);
+        this.withComments = canonicalization.isWithComments();
+        this.exclusive = canonicalization.isExclusive();
+        this.inclusivePrefixes = new HashSet<>();
+        for (String prefix : inclusivePrefixes) {
+            this.inclusivePrefixes.add("#default".equals(prefix) ? "" : prefix);
+        }
+        this.namespaceScopes.push(Collections.<String, String>emptyMap());
+        this.xmlAttributeScopes.push(Collections.<String, String>emptyMap());
+        this.renderedScopes.push(Collections.<String, String>emptyMap());
+    }
+
+    /**
+     * Writes the canonical form of the current event of the given reader.
+     *
+     * @param reader The reader positioned at the event to write.
+     * @throws IOException in case the canonical form cannot be written.
+     */
+    void write(XMLStreamReader reader) throws IOException {
+        switch (reader.getEventType()) {
+            case XMLStreamConstants.START_ELEMENT:
+                writeStartElement(reader);
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                writeEndElement(reader);
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+                if (depth > 0) {
+                    out.writeText(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                }
+                break;
+            case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                writeProcessingInstruction(reader.getPITarget(), reader.getPIData());
+                break;
+            case XMLStreamConstants.COMMENT:
+                if (withComments) {
+                    writeComment(reader.getText());
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Writes all buffered output to the underlying stream.
+     *
+     * @throws IOException in case the canonical form cannot be written.
+     */
+    void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Hands the output buffer back to the pool. The canonicalizer must not be used afterwards.
+     */
+    void release() {
+        BufferPool.release(buffer);
+    }
+
+    /**
+     * Writes all buffered output to the current stream and directs further output to the given one.
+     *
+     * @param out The stream receiving further output.
+     * @throws IOException in case the buffered output cannot be written.
+     */
+    void redirect(OutputStream out) throws IOException {
+        this.out.redirect(out);
+    }
+
+    /**
+     * @return The namespaces in scope of the current element, mapped from prefix to URI. The default namespace has
+     * the empty prefix.
+     */
+    Map<String, String> getNamespacesInScope() {
+        return namespaceScopes.peek();
+    }
+
+    /**
+     * @return The namespaces the canonical form declares in scope of the current element, mapped from prefix to URI.
+     * These are the namespaces in scope, unless exclusive canonicalization dropped declarations that are not used.
+     */
+    Map<String, String> getRenderedNamespaces() {
+        return exclusive ? renderedScopes.peek() : namespaceScopes.peek();
+    }
+
+    /**
+     * @return The xml:* attributes inherited by the children of the current element, mapped from local name to value.
+     */
+    Map<String, String> getXmlAttributesInScope() {
+        return xmlAttributeScopes.peek();
+    }
+
+    private void writeStartElement(XMLStreamReader reader) throws IOException {
+        Map<String, String> parentNamespaces = namespaceScopes.peek();
+        Map<String, String> elementNamespaces = parentNamespaces;
+        namespaces.clear();
+        for (int i = 0, count = reader.getNamespaceCount(); i < count; i++) {
+            String prefix = nullToEmpty(reader.getNamespacePrefix(i));
+            String uri = nullToEmpty(reader.getNamespaceURI(i));
+            String inherited = parentNamespaces.get(prefix);
+            if (inherited == null ? uri.isEmpty() : inherited.equals(uri)) {
+                continue;
+            }
+            if (elementNamespaces == parentNamespaces) {
+                elementNamespaces = new HashMap<>(parentNamespaces);
+            }
+            elementNamespaces.put(prefix, uri);
+            if (!exclusive) {
+                namespaces.add(new String[]{prefix, uri});
+            }
+        }
+
+        Map<String, String> elementRendered = renderedScopes.peek();
+        if (exclusive) {
+            elementRendered = renderUsedNamespace(nullToEmpty(reader.getPrefix()), elementNamespaces, elementRendered);
+            for (int i = 0, count = reader.getAttributeCount(); i < count; i++) {
+                String prefix = nullToEmpty(reader.getAttributePrefix(i));
+                if (!prefix.isEmpty() && !XMLConstants.XML_NS_PREFIX.equals(prefix)) {
+                    elementRendered = renderUsedNamespace(prefix, elementNamespaces, elementRendered);
+                }
+            }
+            for (String prefix : inclusivePrefixes) {
+                if (elementNamespaces.containsKey(prefix)) {
+                    elementRendered = renderUsedNamespace(prefix, elementNamespaces, elementRendered);
+                }
+            }
+        }
+
+        Map<String, String> parentXmlAttributes = xmlAttributeScopes.peek();
+        Map<String, String> elementXmlAttributes = parentXmlAttributes;
+        attributes.clear();
+        for (int i = 0, count = reader.getAttributeCount(); i < count; i++) {
+            String uri = nullToEmpty(reader.getAttributeNamespace(i));
+            String localName = reader.getAttributeLocalName(i);
+            String value = reader.getAttributeValue(i);
+            attributes.add(new String[]{uri, localName, nullToEmpty(reader.getAttributePrefix(i)), value});
+            if (XMLConstants.XML_NS_URI.equals(uri)) {
+                if (elementXmlAttributes == parentXmlAttributes) {
+                    elementXmlAttributes = new HashMap<>(parentXmlAttributes);
+                }
+                elementXmlAttributes.put(localName, value);
+            }
+        }
+
+        Collections.sort(namespaces, ATTRIBUTE_ORDER);
+        Collections.sort(attributes, ATTRIBUTE_ORDER);
+
+        out.writeAscii('<');
+        out.writeName(reader.getPrefix(), reader.getLocalName());
+        for (String[] namespace : namespaces) {
+            out.writeAscii(' ');
+            out.writeName(namespace[0].isEmpty() ? null : XMLConstants.XMLNS_ATTRIBUTE,
+                    namespace[0].isEmpty() ? XMLConstants.XMLNS_ATTRIBUTE : namespace[0]);
+            out.writeAttributeValue(namespace[1]);
+        }
+        for (String[] attribute : attributes) {
+            out.writeAscii(' ');
+            out.writeName(attribute[2], attribute[1]);
+            out.writeAttributeValue(attribute[3]);
+        }
+        out.writeAscii('>');
+
+        namespaceScopes.push(elementNamespaces);
+        xmlAttributeScopes.push(elementXmlAttributes);
+        renderedScopes.push(elementRendered);
+        depth++;
+    }
+
+    /**
+     * Renders the namespace of the given prefix on the current element, unless an output ancestor already rendered it
+     * with the same URI.
+     *
+     * @return The namespaces rendered by the current element and its output ancestors.
+     */
+    private Map<String, String> renderUsedNamespace(String prefix, Map<String, String> inScope,
+                                                    Map<String, String> rendered) {
+        String uri = nullToEmpty(inScope.get(prefix));
+        String renderedUri = rendered.get(prefix);
+        if (renderedUri == null ? uri.isEmpty() : renderedUri.equals(uri)) {
+            return rendered;
+        }
+        Map<String, String> elementRendered = rendered == renderedScopes.peek() ? new HashMap<>(rendered) : rendered;
+        elementRendered.put(prefix, uri);
+        namespaces.add(new String[]{prefix, uri});
+        return elementRendered;
+    }
+
+    private void writeEndElement(XMLStreamReader reader) throws IOException {
+        out.writeAscii('<');
+        out.writeAscii('/');
+        out.writeName(reader.getPrefix(), reader.getLocalName());
+        out.writeAscii('>');
+
+        namespaceScopes.pop();
+        xmlAttributeScopes.pop();
+        renderedScopes.pop();
+        if (--depth == 0) {
+            afterDocumentElement = true;
+        }
+    }
+
+    private void writeProcessingInstruction(String target, String data) throws IOException {
+        if (depth == 0 && afterDocumentElement) {
+            out.writeAscii('\n');
+        }
+        out.writeAscii('<');
+        out.writeAscii('?');
+        out.writeRaw(target);
+        if (data != null && !data.isEmpty()) {
+            out.writeAscii(' ');
+            out.writeRaw(data);
+        }
+        out.writeAscii('?');
+        out.writeAscii('>');
+        if (depth == 0 && !afterDocumentElement) {
+            out.writeAscii('\n');
+        }
+    }
+
+    private void writeComment(String text) throws IOException {
+        if (depth == 0 && afterDocumentElement) {
+            out.writeAscii('\n');
+        }
+        out.writeRaw("<!--");
+        out.writeRaw(text);
+        out.writeRaw("-->");
+        if (depth == 0 && !afterDocumentElement) {
+            out.writeAscii('\n');
+        }
+    }
+
+    private static String nullToEmpty(String s) {
+        return s == null ? "" : s;
+    }
+
+}
@@ -0,0 +1,297 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import org.w3c.dom.Element;
+
+import javax.xml.crypto.MarshalException;
+import javax.xml.crypto.dsig.CanonicalizationMethod;
+import javax.xml.crypto.dsig.Reference;
+import javax.xml.crypto.dsig.SignedInfo;
+import javax.xml.crypto.dsig.Transform;
+import javax.xml.crypto.dsig.XMLSignature;
+import javax.xml.crypto.dsig.XMLSignatureException;
+import javax.xml.crypto.dsig.dom.DOMValidateContext;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The StreamingXmlVerifier class is responsible for validating enveloped signatures of arbitrarily large xml
+ * documents.
+ * <p>
+ * The document is never loaded into memory. While it streams past, its canonical form is digested on the fly, and
+ * only the Signature element is turned into a DOM tree. As the digest method is not known before the Signature
+ * element has been read, the document is digested with every configured digest algorithm.
+ */
+public class StreamingXmlVerifier {
+
+    private static final long DEFAULT_MAXIMUM_SIGNATURE_SIZE = 1024 * 1024;
+
+    private final X509KeySelector keySelector;
+
+    private final Set<DigestAlgorithm> digestAlgorithms;
+
+    private final Metrics metrics;
+
+    /**
+     * Constructs a StreamingXmlVerifier instance supporting the SHA-256 digest algorithm.
+     *
+     * @param keyStore The keystore holds the trusted certificates.
+     */
+    public StreamingXmlVerifier(KeyStore keyStore) {
+        this(new X509KeySelector(keyStore));
+    }
+
+    /**
+     * Constructs a StreamingXmlVerifier instance supporting the SHA-256 digest algorithm.
+     *
+     * @param keySelector The key selector validating the signing certificates.
+     */
+    public StreamingXmlVerifier(X509KeySelector keySelector) {
+        this(keySelector, EnumSet.of(DigestAlgorithm.SHA256));
+    }
+
+    /**
+     * Constructs a StreamingXmlVerifier instance with all its dependencies.
+     *
+     * @param keySelector      The key selector validating the signing certificates.
+     * @param digestAlgorithms The digest algorithms the references of the verified documents may use.
+     */
+    public StreamingXmlVerifier(X509KeySelector keySelector, Set<DigestAlgorithm> digestAlgorithms) {
+        this(keySelector, digestAlgorithms, NoOpMetrics.INSTANCE);
+    }
+
+    /**
+     * Constructs a StreamingXmlVerifier instance with all its dependencies.
+     *
+     * @param keySelector      The key selector validating the signing certificates.
+     * @param digestAlgorithms The digest algorithms the references of the verified documents may use.
+     * @param metrics          The metrics receiving the timings of all verifications.
+     */
+    public StreamingXmlVerifier(X509KeySelector keySelector, Set<DigestAlgorithm> digestAlgorithms, Metrics metrics) {
+        if (digestAlgorithms.isEmpty()) {
+            throw new IllegalArgumentException("At least one digest algorithm is required");
+        }
+        this.keySelector = keySelector;
+        this.digestAlgorithms = Collections.unmodifiableSet(EnumSet.copyOf(digestAlgorithms));
+        this.metrics = metrics;
+    }
+
+    /**
+     * Verifies that a given XML document is valid.
+     *
+     * @param xmlToVerify The XML document to verify.
+     */
+    public void verify(InputStream xmlToVerify) {
+        if (xmlToVerify == null) {
+            throw new IllegalArgumentException("InputStream cannot be null");
+        }
+
+        PhaseTimer timer = PhaseTimer.start(metrics, Metrics.Operation.VERIFY);
+        Map<DigestAlgorithm, MessageDigest> digests = new EnumMap<>(DigestAlgorithm.class);
+        try {
+            for (DigestAlgorithm algorithm : digestAlgorithms) {
+                digests.put(algorithm, EnginePool.acquire(algorithm.getName()));
+            }
+
+            Element signatureElement = digestDocument(timer.count(xmlToVerify), digests);
+            timer.phase(Metrics.Phase.DIGEST);
+            validateSignature(signatureElement, digests, timer);
+            timer.succeed();
+        } catch (InvalidDocumentException | IOException | MarshalException | NoSuchAlgorithmException |
+                XMLSignatureException e) {
+            timer.fail(e);
+            throw new XmlVerificationException(String.format("Signature verification failed: %s", e.getMessage()), e);
+        } catch (RuntimeException e) {
+            timer.fail(e);
+            throw e;
+        } finally {
+            for (MessageDigest digest : digests.values()) {
+                EnginePool.release(digest);
+            }
+        }
+    }
+
+    /**
+     * Verifies that a given XML document is valid.
+     *
+     * @param xmlToVerify The buffer holding the XML document to verify between its position and limit.
+     */
+    public void verifyBuffer(ByteBuffer xmlToVerify) {
+        verify(new ByteBufferInputStream(xmlToVerify));
+    }
+
+    /**
+     * Verifies that a given XML document is valid.
+     *
+     * @param xmlToVerify The array holding the XML document to verify.
+     * @param offset      The offset of the XML document in the array.
+     * @param length      The length of the XML document.
+     */
+    public void verify(byte[] xmlToVerify, int offset, int length) {
+        verify(new ByteArrayInputStream(xmlToVerify, offset, length));
+    }
+
+    /**
+     * Verifies that a given XML file is valid. The file is mapped into memory.
+     *
+     * @param xmlToVerify The XML file to verify.
+     */
+    public void verifyFile(Path xmlToVerify) {
+        InputStream in;
+        try {
+            in = ByteBufferInputStream.map(xmlToVerify);
+        } catch (IOException e) {
+            throw new XmlVerificationException(String.format("Signature verification failed: %s", e.getMessage()), e);
+        }
+        verify(in);
+    }
+
+    private Element digestDocument(InputStream xmlToVerify, Map<DigestAlgorithm, MessageDigest> digests)
+            throws IOException {
+
+        StreamingCanonicalizer canonicalizer = new StreamingCanonicalizer(
+                new DigestingOutputStream(digests.values().toArray(new MessageDigest[digests.size()])), false);
+        DomFragmentBuilder signatureBuilder = null;
+        Element signatureElement = null;
+
+        XMLStreamReader reader = StaxReaderFactory.getDefault().createReader(xmlToVerify);
+        try {
+            while (reader.hasNext()) {
+                int event = StaxReaderFactory.next(reader);
+                if (signatureBuilder != null && signatureElement == null) {
+                    if (signatureBuilder.append(reader)) {
+                        signatureElement = signatureBuilder.getElement();
+                    }
+                } else if (signatureBuilder == null && event == XMLStreamConstants.START_ELEMENT &&
+                        XMLSignature.XMLNS.equals(reader.getNamespaceURI()) &&
+                        "Signature".equals(reader.getLocalName())) {
+                    signatureBuilder = new DomFragmentBuilder(PooledXmlParser.getDefault().newDocument(),
+                            canonicalizer.getNamespacesInScope(), canonicalizer.getXmlAttributesInScope(),
+                            DEFAULT_MAXIMUM_SIGNATURE_SIZE);
+                    signatureBuilder.append(reader);
+                } else {
+                    canonicalizer.write(reader);
+                }
+            }
+            canonicalizer.flush();
+        } catch (XMLStreamException e) {
+            throw new InvalidDocumentException("Invalid XML input", e);
+        } finally {
+            StaxReaderFactory.closeQuietly(reader);
+            canonicalizer.release();
+        }
+
+        if (signatureElement == null) {
+            throw new XmlVerificationException("Cannot find Signature element");
+        }
+        return signatureElement;
+    }
+
+    private void validateSignature(Element signatureElement, Map<DigestAlgorithm, MessageDigest> digests,
+                                   PhaseTimer timer) throws MarshalException, XMLSignatureException {
+
+        DOMValidateContext dvc = new DOMValidateContext(timer.time(keySelector), signatureElement);
+        XMLSignature signature = XmlSignatureFactories.get().unmarshalXMLSignature(dvc);
+        timer.phase(Metrics.Phase.UNMARSHAL);
+        timer.setSignatureMethod(SignatureMethod.fromUri(
+                signature.getSignedInfo().getSignatureMethod().getAlgorithm()));
+
+        Reference reference = getEnvelopedReference(signature.getSignedInfo());
+        String digestMethod = reference.getDigestMethod().getAlgorithm();
+        DigestAlgorithm algorithm = DigestAlgorithm.fromUri(digestMethod);
+        if (algorithm == null || !digests.containsKey(algorithm)) {
+            throw new XmlVerificationException(String.format("Digest method %s is not supported", digestMethod));
+        }
+
+        byte[] digestValue = digests.get(algorithm).digest();
+        boolean sv = signature.getSignatureValue().validate(dvc);
+        timer.phase(Metrics.Phase.SIGNATURE);
+        boolean refValid = MessageDigest.isEqual(digestValue, reference.getDigestValue());
+        if (!sv || !refValid) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("Signature validation status: ").append(sv);
+            if (!sv) {
+                sb.append("\n").append(" - ref[0] validity status: ").append(refValid);
+            }
+            throw new XmlVerificationException(sb.toString());
+        }
+    }
+
+    private static Reference getEnvelopedReference(SignedInfo signedInfo) {
+        List references = signedInfo.getReferences();
+        if (references.size() == 1) {
+            Reference reference = (Reference) references.get(0);
+            List transforms = reference.getTransforms();
+            if ("".equals(reference.getURI()) && !transforms.isEmpty() &&
+                    Transform.ENVELOPED.equals(((Transform) transforms.get(0)).getAlgorithm()) &&
+                    (transforms.size() == 1 || transforms.size() == 2 &&
+                            isInclusiveCanonicalization(((Transform) transforms.get(1)).getAlgorithm()))) {
+                return reference;
+            }
+        }
+        throw new XmlVerificationException("Streaming verification requires a single enveloped reference");
+    }
+
+    private static boolean isInclusiveCanonicalization(String algorithm) {
+        return CanonicalizationMethod.INCLUSIVE.equals(algorithm) ||
+                CanonicalizationMethod.INCLUSIVE_WITH_COMMENTS.equals(algorithm);
+    }
+
+    /**
+     * Feeds all written bytes into a number of message digests.
+     */
+    private static final class DigestingOutputStream extends OutputStream {
+
+        private final MessageDigest[] digests;
+
+        private DigestingOutputStream(MessageDigest[] digests) {
+            this.digests = digests;
+        }
+
+        @Override
+        public void write(int b) {
+            for (MessageDigest digest : digests) {
+                digest.update((byte) b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            for (MessageDigest digest : digests) {
+                digest.update(b, off, len);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,245 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import javax.security.auth.x500.X500Principal;
+import java.math.BigInteger;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * An immutable index over the certificates of a trusted keystore.
+ * <p>
+ * Certificates can be looked up in constant time by their SHA-256 thumbprint, issuer and serial number, subject
+ * name, subject key identifier, or key name (alias or subject name). This allows verifying documents that only
+ * reference the signing certificate instead of embedding it. Distinguished names are compared in their canonical
+ * form. If several certificates share a subject name or key identifier, the first one found is returned.
+ */
+public final class TrustIndex {
+
+    private static final String SUBJECT_KEY_IDENTIFIER_OID = "2.5.29.14";
+
+    private final List<X509Certificate> certificates;
+
+    private final Map<String, X509Certificate> byThumbprint = new HashMap<>();
+
+    private final Map<String, X509Certificate> byIssuerSerial = new HashMap<>();
+
+    private final Map<String, X509Certificate> bySubject = new HashMap<>();
+
+    private final Map<String, X509Certificate> bySubjectKeyIdentifier = new HashMap<>();
+
+    private final Map<String, X509Certificate> byKeyName = new HashMap<>();
+
+    private TrustIndex(Map<String, X509Certificate> aliases) throws CertificateEncodingException,
+            NoSuchAlgorithmException {
+
+        for (Map.Entry<String, X509Certificate> alias : aliases.entrySet()) {
+            X509Certificate certificate = alias.getValue();
+            byThumbprint.put(thumbprint(certificate), certificate);
+            putIfAbsent(byIssuerSerial, issuerSerial(certificate.getIssuerX500Principal(),
+                    certificate.getSerialNumber()), certificate);
+            putIfAbsent(bySubject, canonical(certificate.getSubjectX500Principal()), certificate);
+            byte[] subjectKeyIdentifier = subjectKeyIdentifier(certificate);
+            if (subjectKeyIdentifier != null) {
+                putIfAbsent(bySubjectKeyIdentifier, Utility.toHex(subjectKeyIdentifier), certificate);
+            }
+            byKeyName.put(alias.getKey(), certificate);
+        }
+        this.certificates = Collections.unmodifiableList(new ArrayList<>(byThumbprint.values()));
+    }
+
+    /**
+     * Builds the index over all certificates of the given keystore, of trusted certificate and private key entries.
+     *
+     * @param keyStore The keystore holding the trusted certificates.
+     * @return The index.
+     * @throws KeyStoreException in case the keystore cannot be read.
+     */
+    public static TrustIndex build(KeyStore keyStore) throws KeyStoreException {
+        Map<String, X509Certificate> aliases = new HashMap<>();
+        for (Enumeration<String> e = keyStore.aliases(); e.hasMoreElements(); ) {
+            String alias = e.nextElement();
+            Certificate certificate = keyStore.getCertificate(alias);
+            if (certificate instanceof X509Certificate) {
+                aliases.put(alias, (X509Certificate) certificate);
+            }
+        }
+        return build(aliases);
+    }
+
+    /**
+     * Builds the index over the given certificates.
+     *
+     * @param certificates The trusted certificates, mapped from their key name.
+     * @return The index.
+     * @throws KeyStoreException in case a certificate cannot be encoded.
+     */
+    public static TrustIndex build(Map<String, X509Certificate> certificates) throws KeyStoreException {
+        try {
+            return new TrustIndex(certificates);
+        } catch (CertificateEncodingException | NoSuchAlgorithmException e) {
+            throw new KeyStoreException("Cannot index trusted certificates", e);
+        }
+    }
+
+    /**
+     * @return All indexed certificates.
+     */
+    public List<X509Certificate> getCertificates() {
+        return certificates;
+    }
+
+    /**
+     * @param certificate A certificate.
+     * @return Whether exactly this certificate is trusted.
+     */
+    public boolean contains(X509Certificate certificate) {
+        try {
+            return findByThumbprint(thumbprint(certificate)) != null;
+        } catch (CertificateEncodingException | NoSuchAlgorithmException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param thumbprint The hex encoded SHA-256 thumbprint of the certificate.
+     * @return The certificate, or null if it is not trusted.
+     */
+    public X509Certificate findByThumbprint(String thumbprint) {
+        return byThumbprint.get(thumbprint.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * @param issuer       The distinguished name of the issuer.
+     * @param serialNumber The serial number of the certificate.
+     * @return The certificate, or null if it is not trusted.
+     */
+    public X509Certificate findByIssuerSerial(String issuer, BigInteger serialNumber) {
+        X500Principal principal = parse(issuer);
+        return principal == null ? null : byIssuerSerial.get(issuerSerial(principal, serialNumber));
+    }
+
+    /**
+     * @param subject The distinguished name of the subject.
+     * @return The certificate, or null if it is not trusted.
+     */
+    public X509Certificate findBySubject(String subject) {
+        X500Principal principal = parse(subject);
+        return principal == null ? null : bySubject.get(canonical(principal));
+    }
+
+    /**
+     * @param subjectKeyIdentifier The subject key identifier of the certificate.
+     * @return The certificate, or null if it is not trusted.
+     */
+    public X509Certificate findBySubjectKeyIdentifier(byte[] subjectKeyIdentifier) {
+        return bySubjectKeyIdentifier.get(Utility.toHex(subjectKeyIdentifier));
+    }
+
+    /**
+     * @param keyName The alias of the certificate in the keystore, or its subject name.
+     * @return The certificate, or null if it is not trusted.
+     */
+    public X509Certificate findByKeyName(String keyName) {
+        X509Certificate certificate = byKeyName.get(keyName);
+        return certificate != null ? certificate : findBySubject(keyName);
+    }
+
+    private static String thumbprint(X509Certificate certificate) throws CertificateEncodingException,
+            NoSuchAlgorithmException {
+        MessageDigest md = EnginePool.acquire("SHA-256");
+        try {
+            return Utility.toHex(md.digest(certificate.getEncoded()));
+        } finally {
+            EnginePool.release(md);
+        }
+    }
+
+    private static String issuerSerial(X500Principal issuer, BigInteger serialNumber) {
+        return canonical(issuer) + "#" + serialNumber.toString(16);
+    }
+
+    private static String canonical(X500Principal principal) {
+        return principal.getName(X500Principal.CANONICAL);
+    }
+
+    private static X500Principal parse(String name) {
+        try {
+            return new X500Principal(name);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Extracts the key identifier from the DER encoded extension value, an OCTET STRING wrapping an OCTET STRING.
+     */
+    private static byte[] subjectKeyIdentifier(X509Certificate certificate) {
+        byte[] extension = certificate.getExtensionValue(SUBJECT_KEY_IDENTIFIER_OID);
+        if (extension == null) {
+            return null;
+        }
+        byte[] inner = readOctetString(extension);
+        return inner == null ? null : readOctetString(inner);
+    }
+
+    private static byte[] readOctetString(byte[] der) {
+        if (der.length < 2 || der[0] != 0x04) {
+            return null;
+        }
+        int offset = 2;
+        int length = der[1] & 0xff;
+        if (length > 0x80) {
+            int lengthBytes = length - 0x80;
+            if (lengthBytes > 3 || der.length < 2 + lengthBytes) {
+                return null;
+            }
+            length = 0;
+            for (int i = 0; i < lengthBytes; i++) {
+                length = (length << 8) | (der[offset++] & 0xff);
+            }
+        } else if (length == 0x80) {
+            return null;
+        }
+        if (offset + length > der.length) {
+            return null;
+        }
+        byte[] result = new byte[length];
+        System.arraycopy(der, offset, result, 0, length);
+        return result;
+    }
+
+    private static <K, V> void putIfAbsent(Map<K, V> map, K key, V value) {
+        if (!map.containsKey(key)) {
+            map.put(key, value);
+        }
+    }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An immutable view of the trusted certificates at one point in time: the trust managers validating certificate
+ * chains, and the index resolving references to certificates.
+ * <p>
+ * Every snapshot carries a unique version, so that results derived from one snapshot are never mistaken for results
+ * of another.
+ */
+public final class TrustSnapshot {
+
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    private final long version;
+
+    private final X509TrustManager[] trustManagers;
+
+    private final TrustIndex index;
+
+    private TrustSnapshot(X509TrustManager[] trustManagers, TrustIndex index) {
+        this.version = VERSIONS.incrementAndGet();
+        this.trustManagers = trustManagers;
+        this.index = index;
+    }
+
+    /**
+     * Builds a snapshot of the certificates in the given keystore.
+     *
+     * @param keyStore The keystore holding the trusted certificates.
+     * @return The snapshot.
+     * @throws KeyStoreException        in case the keystore cannot be read.
+     * @throws NoSuchAlgorithmException in case the default trust manager algorithm is not available.
+     */
+    public static TrustSnapshot build(KeyStore keyStore) throws KeyStoreException, NoSuchAlgorithmException {
+        TrustIndex index = TrustIndex.build(keyStore);
+        if (index.getCertificates().isEmpty()) {
+            return new TrustSnapshot(new X509TrustManager[0], index);
+        }
+
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        tmf.init(keyStore);
+
+        List<X509TrustManager> result = new ArrayList<>();
+        for (TrustManager tm : tmf.getTrustManagers()) {
+            if (tm instanceof X509TrustManager) {
+                result.add((X509TrustManager) tm);
+            }
+        }
+        return new TrustSnapshot(result.toArray(new X509TrustManager[result.size()]), index);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return The trust managers validating certificate chains, empty if no certificate is trusted.
+     */
+    X509TrustManager[] getTrustManagers() {
+        return trustManagers;
+    }
+
+    public TrustIndex getIndex() {
+        return index;
+    }
+
+}
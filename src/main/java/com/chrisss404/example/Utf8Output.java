@@ -0,0 +1,200 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Buffers UTF-8 encoded XML output, escaping text and attribute values the way Canonical XML does.
+ */
+final class Utf8Output {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final byte[] buffer;
+
+    private OutputStream out;
+
+    private int position;
+
+    private char pendingHighSurrogate;
+
+    /**
+     * Constructs a Utf8Output.
+     *
+     * @param out The stream receiving the encoded output.
+     */
+    Utf8Output(OutputStream out) {
+        this(out, new byte[BUFFER_SIZE]);
+    }
+
+    /**
+     * Constructs a Utf8Output writing to the underlying stream in blocks of the size of the given buffer.
+     *
+     * @param out    The stream receiving the encoded output.
+     * @param buffer The buffer holding the output until it is written, at least 4 bytes long.
+     */
+    Utf8Output(OutputStream out, byte[] buffer) {
+        this.out = out;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Writes all buffered output to the current stream and directs further output to the given one.
+     *
+     * @param out The stream receiving further output.
+     * @throws IOException in case the buffered output cannot be written.
+     */
+    void redirect(OutputStream out) throws IOException {
+        flush();
+        this.out = out;
+    }
+
+    /**
+     * Discards all buffered output and directs further output to the given stream, so that the buffer can be reused
+     * for another document.
+     *
+     * @param out The stream receiving further output.
+     */
+    void reset(OutputStream out) {
+        this.out = out;
+        this.position = 0;
+        this.pendingHighSurrogate = 0;
+    }
+
+    /**
+     * Writes all buffered output to the underlying stream.
+     *
+     * @throws IOException in case the output cannot be written.
+     */
+    void flush() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    void writeAscii(char c) throws IOException {
+        if (position == buffer.length) {
+            flush();
+        }
+        buffer[position++] = (byte) c;
+    }
+
+    void writeRaw(String s) throws IOException {
+        for (int i = 0, length = s.length(); i < length; i++) {
+            writeChar(s.charAt(i));
+        }
+    }
+
+    void writeName(String prefix, String localName) throws IOException {
+        if (prefix != null && !prefix.isEmpty()) {
+            writeRaw(prefix);
+            writeAscii(':');
+        }
+        writeRaw(localName);
+    }
+
+    void writeAttributeValue(String value) throws IOException {
+        writeAscii('=');
+        writeAscii('"');
+        for (int i = 0, length = value.length(); i < length; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&':
+                    writeRaw("&amp;");
+                    break;
+                case '<':
+                    writeRaw("&lt;");
+                    break;
+                case '"':
+                    writeRaw("&quot;");
+                    break;
+                case '\t':
+                    writeRaw("&#x9;");
+                    break;
+                case '\n':
+                    writeRaw("&#xA;");
+                    break;
+                case '\r':
+                    writeRaw("&#xD;");
+                    break;
+                default:
+                    writeChar(c);
+            }
+        }
+        writeAscii('"');
+    }
+
+    void writeText(String text) throws IOException {
+        for (int i = 0, length = text.length(); i < length; i++) {
+            writeTextChar(text.charAt(i));
+        }
+    }
+
+    void writeText(char[] text, int start, int length) throws IOException {
+        for (int i = start, end = start + length; i < end; i++) {
+            writeTextChar(text[i]);
+        }
+    }
+
+    private void writeTextChar(char c) throws IOException {
+        switch (c) {
+            case '&':
+                writeRaw("&amp;");
+                break;
+            case '<':
+                writeRaw("&lt;");
+                break;
+            case '>':
+                writeRaw("&gt;");
+                break;
+            case '\r':
+                writeRaw("&#xD;");
+                break;
+            default:
+                writeChar(c);
+        }
+    }
+
+    private void writeChar(char c) throws IOException {
+        if (position > buffer.length - 4) {
+            flush();
+        }
+        if (c < 0x80) {
+            buffer[position++] = (byte) c;
+        } else if (c < 0x800) {
+            buffer[position++] = (byte) (0xc0 | (c >> 6));
+            buffer[position++] = (byte) (0x80 | (c & 0x3f));
+        } else if (Character.isHighSurrogate(c)) {
+            pendingHighSurrogate = c;
+        } else if (Character.isLowSurrogate(c) && pendingHighSurrogate != 0) {
+            int codePoint = Character.toCodePoint(pendingHighSurrogate, c);
+            pendingHighSurrogate = 0;
+            buffer[position++] = (byte) (0xf0 | (codePoint >> 18));
+            buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+            buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+            buffer[position++] = (byte) (0x80 | (codePoint & 0x3f));
+        } else {
+            buffer[position++] = (byte) (0xe0 | (c >> 12));
+            buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+            buffer[position++] = (byte) (0x80 | (c & 0x3f));
+        }
+    }
+
+}
@@ -17,11 +17,7 @@
 package com.chrisss404.example;
 
 import org.w3c.dom.Document;
-import org.xml.sax.SAXException;
 
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import java.io.IOException;
 import java.io.InputStream;
 
 /**
@@ -29,6 +25,8 @@ import java.io.InputStream;
  */
 public final class Utility {
 
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
     private Utility() {
     }
 
@@ -39,13 +37,22 @@ public final class Utility {
      * @return The generated dom document.
      */
     public static Document loadXmlDocument(InputStream xmlInputStream) {
-        try {
-            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-            dbf.setNamespaceAware(true);
-            return dbf.newDocumentBuilder().parse(xmlInputStream);
-        } catch (ParserConfigurationException | IOException | SAXException e) {
-            throw new InvalidDocumentException("Invalid XML input", e);
+        return PooledXmlParser.getDefault().parse(xmlInputStream);
+    }
+
+    /**
+     * Encodes the given bytes as lower case hex string.
+     *
+     * @param bytes The bytes to encode.
+     * @return The hex representation.
+     */
+    public static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
         }
+        return new String(hex);
     }
 
 }
@@ -0,0 +1,170 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Configures the order of the checks performed by the XmlVerifier, and whether all checks are completed after one
+ * failed in order to report them.
+ * <p>
+ * Ordering the cheap checks first and disabling diagnostics rejects forged or corrupted documents before their
+ * referenced content is digested, and never computes a result twice.
+ */
+public class VerificationPolicy {
+
+    /**
+     * The checks making up a verification.
+     */
+    public enum Check {
+        /**
+         * Rejects signature and digest methods not on the allow-lists.
+         */
+        ALGORITHMS,
+        /**
+         * Rejects signatures without a trusted key.
+         */
+        TRUSTED_KEY,
+        /**
+         * Validates the signature value over SignedInfo.
+         */
+        SIGNATURE_VALUE,
+        /**
+         * Validates the digests of all references.
+         */
+        REFERENCES
+    }
+
+    /**
+     * Validates the signature value and then all references, reporting the outcome of both. This is the classic
+     * JSR 105 core validation.
+     */
+    public static final VerificationPolicy COMPLETE = new VerificationPolicy(
+            Arrays.asList(Check.SIGNATURE_VALUE, Check.REFERENCES), true,
+            EnumSet.allOf(SignatureMethod.class), EnumSet.allOf(DigestAlgorithm.class));
+
+    /**
+     * Checks the algorithms, the key and the signature value before digesting any reference, and stops at the first
+     * failed check.
+     */
+    public static final VerificationPolicy FAIL_FAST = new VerificationPolicy(
+            Arrays.asList(Check.ALGORITHMS, Check.TRUSTED_KEY, Check.SIGNATURE_VALUE, Check.REFERENCES), false,
+            EnumSet.allOf(SignatureMethod.class), EnumSet.allOf(DigestAlgorithm.class));
+
+    private final List<Check> order;
+
+    private final boolean diagnostics;
+
+    private final Set<SignatureMethod> signatureMethods;
+
+    private final Set<DigestAlgorithm> digestAlgorithms;
+
+    /**
+     * Constructs a VerificationPolicy.
+     *
+     * @param order            The checks in the order they are performed. Must contain the signature value and
+     *                         references checks.
+     * @param diagnostics      Whether the remaining checks are performed after one failed, to report their outcome.
+     * @param signatureMethods The allowed signature methods.
+     * @param digestAlgorithms The allowed digest algorithms.
+     */
+    public VerificationPolicy(List<Check> order, boolean diagnostics, Set<SignatureMethod> signatureMethods,
+                              Set<DigestAlgorithm> digestAlgorithms) {
+        if (!order.contains(Check.SIGNATURE_VALUE) || !order.contains(Check.REFERENCES)) {
+            throw new IllegalArgumentException("Signature value and references must be checked");
+        }
+        if (EnumSet.copyOf(order).size() != order.size()) {
+            throw new IllegalArgumentException("Every check must occur only once");
+        }
+        this.order = Collections.unmodifiableList(new ArrayList<>(order));
+        this.diagnostics = diagnostics;
+        this.signatureMethods = Collections.unmodifiableSet(copyOf(signatureMethods, SignatureMethod.class));
+        this.digestAlgorithms = Collections.unmodifiableSet(copyOf(digestAlgorithms, DigestAlgorithm.class));
+    }
+
+    private static <E extends Enum<E>> EnumSet<E> copyOf(Set<E> elements, Class<E> type) {
+        EnumSet<E> copy = EnumSet.noneOf(type);
+        copy.addAll(elements);
+        return copy;
+    }
+
+    public List<Check> getOrder() {
+        return order;
+    }
+
+    public boolean isDiagnostics() {
+        return diagnostics;
+    }
+
+    public Set<SignatureMethod> getSignatureMethods() {
+        return signatureMethods;
+    }
+
+    public Set<DigestAlgorithm> getDigestAlgorithms() {
+        return digestAlgorithms;
+    }
+
+    /**
+     * Returns a copy of this policy which additionally rejects the given signature methods, e.g.
+     * {@code FAIL_FAST.withoutSignatureMethods(SignatureMethod.RSA_SHA1)}.
+     *
+     * @param methods The signature methods to reject.
+     * @return The restricted policy.
+     */
+    public VerificationPolicy withoutSignatureMethods(SignatureMethod... methods) {
+        EnumSet<SignatureMethod> allowed = copyOf(signatureMethods, SignatureMethod.class);
+        allowed.removeAll(Arrays.asList(methods));
+        return new VerificationPolicy(order, diagnostics, allowed, digestAlgorithms);
+    }
+
+    /**
+     * Returns a copy of this policy which additionally rejects the given digest algorithms, e.g.
+     * {@code FAIL_FAST.withoutDigestAlgorithms(DigestAlgorithm.SHA1)}.
+     *
+     * @param algorithms The digest algorithms to reject.
+     * @return The restricted policy.
+     */
+    public VerificationPolicy withoutDigestAlgorithms(DigestAlgorithm... algorithms) {
+        EnumSet<DigestAlgorithm> allowed = copyOf(digestAlgorithms, DigestAlgorithm.class);
+        allowed.removeAll(Arrays.asList(algorithms));
+        return new VerificationPolicy(order, diagnostics, signatureMethods, allowed);
+    }
+
+    /**
+     * @param uri The URI of a signature method.
+     * @return Whether the signature method is allowed.
+     */
+    public boolean isSignatureMethodAllowed(String uri) {
+        SignatureMethod method = SignatureMethod.fromUri(uri);
+        return method != null && signatureMethods.contains(method);
+    }
+
+    /**
+     * @param uri The URI of a digest method.
+     * @return Whether the digest method is allowed.
+     */
+    public boolean isDigestAlgorithmAllowed(String uri) {
+        DigestAlgorithm algorithm = DigestAlgorithm.fromUri(uri);
+        return algorithm != null && digestAlgorithms.contains(algorithm);
+    }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import org.w3c.dom.Document;
+
+/**
+ * Holds the outcome of verifying a single XML document.
+ * <p>
+ * A document is either valid, invalid because the verifier rejected it, or could not be verified at all because of
+ * an unexpected error.
+ */
+public class VerificationResult {
+
+    /**
+     * The possible outcomes of a verification.
+     */
+    public enum Status {
+        VALID, INVALID, ERROR
+    }
+
+    private final Status status;
+
+    private final Document document;
+
+    private final String reason;
+
+    private final Throwable error;
+
+    private VerificationResult(Status status, Document document, String reason, Throwable error) {
+        this.status = status;
+        this.document = document;
+        this.reason = reason;
+        this.error = error;
+    }
+
+    /**
+     * Creates the result of a successfully verified document.
+     *
+     * @param document The verified XML document, may be null.
+     * @return The result.
+     */
+    public static VerificationResult valid(Document document) {
+        return new VerificationResult(Status.VALID, document, null, null);
+    }
+
+    /**
+     * Creates the result of a document rejected by the verifier.
+     *
+     * @param cause The exception describing why the document has been rejected.
+     * @return The result.
+     */
+    public static VerificationResult invalid(XmlVerificationException cause) {
+        return new VerificationResult(Status.INVALID, null, cause.getMessage(), cause);
+    }
+
+    /**
+     * Creates the result of a document that could not be verified.
+     *
+     * @param cause The unexpected error.
+     * @return The result.
+     */
+    public static VerificationResult error(Throwable cause) {
+        return new VerificationResult(Status.ERROR, null, cause.toString(), cause);
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isValid() {
+        return status == Status.VALID;
+    }
+
+    /**
+     * @return The verified XML document, or null if the document is not valid or has not been retained.
+     */
+    public Document getDocument() {
+        return document;
+    }
+
+    /**
+     * @return The reason why the document is not valid, or null if it is.
+     */
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * @return The exception that caused the document to be not valid, or null if it is.
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return reason == null ? status.toString() : status + ": " + reason;
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.X509Certificate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the outcome of verifications, keyed by the version of the trust snapshot they were verified against and
+ * the SHA-256 digest of the complete input, so that exact replays of a message are neither parsed nor verified again.
+ * <p>
+ * The digest has to be collision resistant, as a forged document sharing the key of a valid one would be accepted
+ * unseen. As the key contains the snapshot version, results are never reused once the trusted certificates have
+ * changed. Only valid and invalid outcomes are cached, never unexpected errors, which may be transient.
+ * <p>
+ * The cache is bounded and evicts the least recently used entry once it is full. Every entry expires after the
+ * configured time to live, and never outlives the certificate of the signer.
+ */
+public class VerificationResultCache {
+
+    private final int maximumSize;
+
+    private final long timeToLiveMillis;
+
+    private final Map<String, CachedResult> entries;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * Constructs a VerificationResultCache.
+     *
+     * @param maximumSize The maximum number of cached verification results.
+     * @param timeToLive  The duration a verification result stays valid.
+     * @param unit        The unit of the time to live.
+     */
+    public VerificationResultCache(final int maximumSize, long timeToLive, TimeUnit unit) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("Maximum size must be positive");
+        }
+        this.maximumSize = maximumSize;
+        this.timeToLiveMillis = unit.toMillis(timeToLive);
+        this.entries = new LinkedHashMap<String, CachedResult>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedResult> eldest) {
+                return size() > maximumSize;
+            }
+        };
+    }
+
+    /**
+     * Computes the cache key of the given input.
+     *
+     * @param snapshot The trust snapshot the input is verified against.
+     * @param xml      The array holding the input.
+     * @param offset   The offset of the input in the array.
+     * @param length   The length of the input.
+     * @return The snapshot version followed by the hex encoded SHA-256 digest of the input.
+     * @throws NoSuchAlgorithmException in case SHA-256 is not available.
+     */
+    public static String key(TrustSnapshot snapshot, byte[] xml, int offset, int length)
+            throws NoSuchAlgorithmException {
+        MessageDigest md = EnginePool.acquire(DigestAlgorithm.SHA256.getName());
+        try {
+            md.update(xml, offset, length);
+            return key(snapshot, md.digest());
+        } finally {
+            EnginePool.release(md);
+        }
+    }
+
+    /**
+     * @return The cache key of an input with the given digest.
+     */
+    static String key(TrustSnapshot snapshot, byte[] digest) {
+        return snapshot.getVersion() + ":" + Utility.toHex(digest);
+    }
+
+    /**
+     * Looks up the outcome of a verification.
+     *
+     * @param key The key of the verified input.
+     * @return The cached result, or null if the input has not been verified yet or the result expired.
+     */
+    public VerificationResult get(String key) {
+        CachedResult entry;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry != null && entry.expiresAt <= System.currentTimeMillis()) {
+                entries.remove(key);
+                entry = null;
+            }
+        }
+        if (entry == null) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        hitCount.incrementAndGet();
+        return entry.result;
+    }
+
+    /**
+     * Stores the outcome of a verification. Results with status {@link VerificationResult.Status#ERROR} and results
+     * holding a document are not cached. The result expires no later than the certificate of the signer.
+     *
+     * @param key    The key of the verified input.
+     * @param result The outcome of the verification.
+     * @param signer The certificate of the signer, or null if it is not known.
+     */
+    public void put(String key, VerificationResult result, X509Certificate signer) {
+        if (result.getStatus() == VerificationResult.Status.ERROR || result.getDocument() != null) {
+            return;
+        }
+        long expiresAt = System.currentTimeMillis() + timeToLiveMillis;
+        if (signer != null) {
+            expiresAt = Math.min(expiresAt, signer.getNotAfter().getTime());
+        }
+        CachedResult entry = new CachedResult(result, expiresAt);
+        synchronized (this) {
+            entries.put(key, entry);
+        }
+    }
+
+    /**
+     * Discards all cached verification results.
+     */
+    public synchronized void invalidateAll() {
+        entries.clear();
+    }
+
+    /**
+     * @return The number of cached verification results.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return The maximum number of cached verification results.
+     */
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * @return The number of lookups that found a result.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return The number of lookups that found no result.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Holds a verification result together with its expiry.
+     */
+    private static final class CachedResult {
+
+        private final VerificationResult result;
+
+        private final long expiresAt;
+
+        private CachedResult(VerificationResult result, long expiresAt) {
+            this.result = result;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+}
@@ -0,0 +1,230 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Supplies the certificates of a keystore file or a directory of PEM files, and reloads them whenever the file system
+ * reports a change.
+ * <p>
+ * Changes are picked up by a daemon thread using a {@link WatchService}. After a change, the thread waits until the
+ * files have been quiet for a short moment, loads them into a new snapshot and publishes it through a volatile
+ * field. Reading the snapshot never blocks, and verifications holding the previous snapshot keep using it until they
+ * are done. If loading fails, e.g. because a file is only partially written, the previous snapshot stays in place
+ * and the failure is available through {@link #getLastFailure()}.
+ */
+public class WatchingTrustMaterialProvider implements TrustMaterialProvider, Closeable {
+
+    private static final long QUIET_PERIOD_MILLIS = 200;
+
+    private final Path directory;
+
+    private final Path keyStoreFile;
+
+    private final String keyStoreType;
+
+    private final char[] keyStorePassword;
+
+    private final WatchService watchService;
+
+    private final Thread watcher;
+
+    private volatile TrustSnapshot snapshot;
+
+    private volatile Exception lastFailure;
+
+    private WatchingTrustMaterialProvider(Path directory, Path keyStoreFile, String keyStoreType,
+                                          char[] keyStorePassword) throws IOException {
+        this.directory = directory;
+        this.keyStoreFile = keyStoreFile;
+        this.keyStoreType = keyStoreType;
+        this.keyStorePassword = keyStorePassword == null ? null : keyStorePassword.clone();
+        this.snapshot = load();
+
+        this.watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+        this.watcher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                watch();
+            }
+        }, "trust-material-watcher-" + directory.getFileName());
+        this.watcher.setDaemon(true);
+        this.watcher.start();
+    }
+
+    /**
+     * Watches a keystore file.
+     *
+     * @param keyStoreFile The keystore file holding the trusted certificates.
+     * @param type         The type of the keystore, e.g. JKS or PKCS12.
+     * @param password     The password of the keystore, may be null.
+     * @return The provider, which must be closed when no longer needed.
+     * @throws IOException            in case the directory of the keystore cannot be watched.
+     * @throws TrustMaterialException in case the keystore cannot be loaded.
+     */
+    public static WatchingTrustMaterialProvider forKeyStore(Path keyStoreFile, String type, char[] password)
+            throws IOException {
+        Path file = keyStoreFile.toAbsolutePath();
+        return new WatchingTrustMaterialProvider(file.getParent(), file, type, password);
+    }
+
+    /**
+     * Watches a directory of PEM encoded certificates, i.e. all files ending with .pem, .crt or .cer.
+     *
+     * @param directory The directory holding the trusted certificates.
+     * @return The provider, which must be closed when no longer needed.
+     * @throws IOException            in case the directory cannot be watched.
+     * @throws TrustMaterialException in case the certificates cannot be loaded.
+     */
+    public static WatchingTrustMaterialProvider forPemDirectory(Path directory) throws IOException {
+        return new WatchingTrustMaterialProvider(directory.toAbsolutePath(), null, null, null);
+    }
+
+    @Override
+    public TrustSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    @Override
+    public void refresh() {
+        snapshot = load();
+    }
+
+    /**
+     * @return The reason why the latest reload failed, or null if it succeeded.
+     */
+    public Exception getLastFailure() {
+        return lastFailure;
+    }
+
+    /**
+     * Stops watching for changes.
+     *
+     * @throws IOException in case the watch service cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+        try {
+            watcher.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean relevant = drain(key);
+                // wait for the writer to finish, every further event restarts the quiet period
+                for (WatchKey next; (next = watchService.poll(QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS)) != null; ) {
+                    relevant |= drain(next);
+                }
+                if (relevant) {
+                    try {
+                        refresh();
+                        lastFailure = null;
+                    } catch (TrustMaterialException e) {
+                        lastFailure = e;
+                    }
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // closed
+        }
+    }
+
+    private boolean drain(WatchKey key) {
+        boolean relevant = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            Object context = event.context();
+            relevant |= event.kind() == StandardWatchEventKinds.OVERFLOW ||
+                    context instanceof Path && isRelevant((Path) context);
+        }
+        key.reset();
+        return relevant;
+    }
+
+    private boolean isRelevant(Path fileName) {
+        if (keyStoreFile != null) {
+            return fileName.equals(keyStoreFile.getFileName());
+        }
+        String name = fileName.toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".pem") || name.endsWith(".crt") || name.endsWith(".cer");
+    }
+
+    private TrustSnapshot load() {
+        try {
+            KeyStore keyStore;
+            if (keyStoreFile != null) {
+                keyStore = KeyStore.getInstance(keyStoreType);
+                try (InputStream in = Files.newInputStream(keyStoreFile)) {
+                    keyStore.load(in, keyStorePassword);
+                }
+            } else {
+                keyStore = loadPemDirectory();
+            }
+            return TrustSnapshot.build(keyStore);
+        } catch (IOException | GeneralSecurityException e) {
+            throw new TrustMaterialException("Cannot load trusted certificates", e);
+        }
+    }
+
+    private KeyStore loadPemDirectory() throws IOException, GeneralSecurityException {
+        KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+        keyStore.load(null, null);
+
+        CertificateFactory cf = CertificateFactory.getInstance("X.509");
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                if (!Files.isRegularFile(file) || !isRelevant(file.getFileName())) {
+                    continue;
+                }
+                try (InputStream in = Files.newInputStream(file)) {
+                    Certificate[] certificates = cf.generateCertificates(in).toArray(new Certificate[0]);
+                    for (int i = 0; i < certificates.length; i++) {
+                        String alias = file.getFileName().toString();
+                        keyStore.setCertificateEntry(certificates.length == 1 ? alias : alias + "#" + i,
+                                certificates[i]);
+                    }
+                }
+            }
+        }
+        return keyStore;
+    }
+
+}
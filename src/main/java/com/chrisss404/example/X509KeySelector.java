@@ -16,8 +16,6 @@
 
 package com.chrisss404.example;
 
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.TrustManagerFactory;
 import javax.net.ssl.X509TrustManager;
 import javax.xml.crypto.AlgorithmMethod;
 import javax.xml.crypto.KeySelector;
@@ -25,21 +23,39 @@ import javax.xml.crypto.KeySelectorException;
 import javax.xml.crypto.KeySelectorResult;
 import javax.xml.crypto.XMLCryptoContext;
 import javax.xml.crypto.dsig.keyinfo.KeyInfo;
+import javax.xml.crypto.dsig.keyinfo.KeyName;
 import javax.xml.crypto.dsig.keyinfo.X509Data;
+import javax.xml.crypto.dsig.keyinfo.X509IssuerSerial;
 import java.security.Key;
 import java.security.KeyStore;
-import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Selects the public key of a given XML document.
+ * <p>
+ * Instances are safe for use by multiple concurrent threads: the trusted certificates are read from immutable
+ * snapshots, and the validation cache synchronizes its access. All keys selected within one crypto context are
+ * validated against the same snapshot, even if the trusted certificates are reloaded in the meantime. Validation
+ * results are cached per snapshot version. The certificate of the selected key is recorded in the crypto context, see
+ * {@link #getSigner(XMLCryptoContext)}.
  */
 public class X509KeySelector extends KeySelector {
 
-    private final KeyStore keyStore;
+    private static final int DEFAULT_CACHE_SIZE = 1024;
+
+    private static final long DEFAULT_CACHE_TTL_MINUTES = 10;
+
+    private static final String SNAPSHOT_PROPERTY = X509KeySelector.class.getName() + ".snapshot";
+
+    private static final String SIGNER_PROPERTY = X509KeySelector.class.getName() + ".signer";
+
+    private final TrustMaterialProvider trustMaterialProvider;
+
+    private final CertificateValidationCache validationCache;
 
     /**
      * Constructs a X509KeySelector with all required dependencies.
@@ -47,11 +63,55 @@ public class X509KeySelector extends KeySelector {
      * @param keyStore The keystore holds the trusted certificates.
      */
     public X509KeySelector(KeyStore keyStore) {
-        this.keyStore = keyStore;
+        this(new KeyStoreTrustMaterialProvider(keyStore));
+    }
+
+    /**
+     * Constructs a X509KeySelector with all required dependencies.
+     *
+     * @param keyStore        The keystore holds the trusted certificates.
+     * @param validationCache The cache remembering already validated certificates.
+     */
+    public X509KeySelector(KeyStore keyStore, CertificateValidationCache validationCache) {
+        this(new KeyStoreTrustMaterialProvider(keyStore), validationCache);
+    }
+
+    /**
+     * Constructs a X509KeySelector with all required dependencies.
+     *
+     * @param trustMaterialProvider The provider of the trusted certificates.
+     */
+    public X509KeySelector(TrustMaterialProvider trustMaterialProvider) {
+        this(trustMaterialProvider, new CertificateValidationCache(DEFAULT_CACHE_SIZE, DEFAULT_CACHE_TTL_MINUTES,
+                TimeUnit.MINUTES));
+    }
+
+    /**
+     * Constructs a X509KeySelector with all required dependencies.
+     *
+     * @param trustMaterialProvider The provider of the trusted certificates.
+     * @param validationCache       The cache remembering already validated certificates.
+     */
+    public X509KeySelector(TrustMaterialProvider trustMaterialProvider, CertificateValidationCache validationCache) {
+        this.trustMaterialProvider = trustMaterialProvider;
+        this.validationCache = validationCache;
+    }
+
+    /**
+     * Reloads the trusted certificates and discards all cached validation results, so that changes of the backing
+     * keystore take effect. Must be called whenever the keystore has been modified, unless the trust material
+     * provider detects changes by itself.
+     */
+    public void refresh() {
+        trustMaterialProvider.refresh();
+        validationCache.invalidateAll();
     }
 
     /**
      * Finds the key from the KeyInfo element, and validates it.
+     * <p>
+     * Embedded certificates are tried first. If none of them fits, the references to a certificate (issuer and serial
+     * number, subject name, subject key identifier and key name) are looked up in the trusted keystore.
      *
      * @param keyInfo The KeyInfo element.
      * @param purpose The purpose of the key (sign, verify, encrypt, or decrypt)
@@ -63,25 +123,51 @@ public class X509KeySelector extends KeySelector {
     @Override
     public KeySelectorResult select(KeyInfo keyInfo, KeySelector.Purpose purpose, AlgorithmMethod method,
                                     XMLCryptoContext context) throws KeySelectorException {
+        if (keyInfo == null) {
+            throw new KeySelectorException("No key found!");
+        }
+
+        TrustSnapshot snapshot = getSnapshot(context);
+        boolean hasReferences = false;
         for (Object keyInfoObject : keyInfo.getContent()) {
+            if (keyInfoObject instanceof KeyName) {
+                hasReferences = true;
+            }
             if (!(keyInfoObject instanceof X509Data)) {
                 continue;
             }
 
             for (Object x509DataObject : ((X509Data) keyInfoObject).getContent()) {
                 if (!(x509DataObject instanceof X509Certificate)) {
+                    hasReferences = true;
                     continue;
                 }
 
-                PublicKey publicKey = ((X509Certificate) x509DataObject).getPublicKey();
-                try {
-                    validateCertificate(new X509Certificate[]{(X509Certificate) x509DataObject}, publicKey.getAlgorithm());
-                } catch (CertificateException | KeyStoreException | NoSuchAlgorithmException e) {
-                    throw new KeySelectorException(e.getMessage(), e);
+                KeySelectorResult result = selectCertificate((X509Certificate) x509DataObject, method, snapshot,
+                        context);
+                if (result != null) {
+                    return result;
                 }
+            }
+        }
 
-                if (isAlgorithmSupported(publicKey.getAlgorithm(), method.getAlgorithm())) {
-                    return buildKeySelectorResult(publicKey);
+        if (hasReferences) {
+            for (Object keyInfoObject : keyInfo.getContent()) {
+                if (keyInfoObject instanceof KeyName) {
+                    KeySelectorResult result = selectCertificate(
+                            snapshot.getIndex().findByKeyName(((KeyName) keyInfoObject).getName()), method, snapshot,
+                            context);
+                    if (result != null) {
+                        return result;
+                    }
+                } else if (keyInfoObject instanceof X509Data) {
+                    for (Object x509DataObject : ((X509Data) keyInfoObject).getContent()) {
+                        X509Certificate certificate = resolve(x509DataObject, snapshot.getIndex());
+                        KeySelectorResult result = selectCertificate(certificate, method, snapshot, context);
+                        if (result != null) {
+                            return result;
+                        }
+                    }
                 }
             }
         }
@@ -89,18 +175,111 @@ public class X509KeySelector extends KeySelector {
         throw new KeySelectorException("No key found!");
     }
 
-    private void validateCertificate(X509Certificate[] chain, String authType) throws CertificateException,
-            KeyStoreException, NoSuchAlgorithmException {
+    private KeySelectorResult selectCertificate(X509Certificate certificate, AlgorithmMethod method,
+                                                TrustSnapshot snapshot, XMLCryptoContext context)
+            throws KeySelectorException {
+        if (certificate == null) {
+            return null;
+        }
+
+        PublicKey publicKey = certificate.getPublicKey();
+        try {
+            validateCertificate(new X509Certificate[]{certificate}, publicKey.getAlgorithm(), snapshot);
+        } catch (CertificateException | NoSuchAlgorithmException e) {
+            throw new KeySelectorException(e.getMessage(), e);
+        }
+
+        if (!isAlgorithmSupported(publicKey.getAlgorithm(), method.getAlgorithm())) {
+            return null;
+        }
+        if (context != null) {
+            context.setProperty(SIGNER_PROPERTY, certificate);
+        }
+        return buildKeySelectorResult(publicKey);
+    }
+
+    /**
+     * Looks up the trusted certificate referenced by an X509Data entry.
+     */
+    private static X509Certificate resolve(Object x509DataObject, TrustIndex index) {
+        if (x509DataObject instanceof X509IssuerSerial) {
+            X509IssuerSerial issuerSerial = (X509IssuerSerial) x509DataObject;
+            return index.findByIssuerSerial(issuerSerial.getIssuerName(), issuerSerial.getSerialNumber());
+        } else if (x509DataObject instanceof String) {
+            return index.findBySubject((String) x509DataObject);
+        } else if (x509DataObject instanceof byte[]) {
+            return index.findBySubjectKeyIdentifier((byte[]) x509DataObject);
+        }
+        return null;
+    }
+
+    /**
+     * @return The current snapshot of the trusted certificates.
+     */
+    TrustSnapshot getSnapshot() {
+        return trustMaterialProvider.getSnapshot();
+    }
+
+    /**
+     * Pins the given snapshot to the given context, so that all keys selected within the context are validated
+     * against it.
+     *
+     * @param context  The crypto context.
+     * @param snapshot The snapshot of the trusted certificates.
+     */
+    static void pin(XMLCryptoContext context, TrustSnapshot snapshot) {
+        context.setProperty(SNAPSHOT_PROPERTY, snapshot);
+    }
+
+    /**
+     * @param context The crypto context.
+     * @return The certificate of the key selected within the given context, or null if no key has been selected.
+     */
+    static X509Certificate getSigner(XMLCryptoContext context) {
+        Object signer = context.getProperty(SIGNER_PROPERTY);
+        return signer instanceof X509Certificate ? (X509Certificate) signer : null;
+    }
 
-        TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
-        tmf.init(keyStore);
+    /**
+     * Returns the snapshot pinned to the given context, or pins the current one.
+     */
+    private TrustSnapshot getSnapshot(XMLCryptoContext context) {
+        Object pinned = context == null ? null : context.getProperty(SNAPSHOT_PROPERTY);
+        if (pinned instanceof TrustSnapshot) {
+            return (TrustSnapshot) pinned;
+        }
+        TrustSnapshot snapshot = trustMaterialProvider.getSnapshot();
+        if (context != null) {
+            context.setProperty(SNAPSHOT_PROPERTY, snapshot);
+        }
+        return snapshot;
+    }
+
+    private void validateCertificate(X509Certificate[] chain, String authType, TrustSnapshot snapshot)
+            throws CertificateException, NoSuchAlgorithmException {
 
-        for (TrustManager tm : tmf.getTrustManagers()) {
-            if (tm instanceof X509TrustManager) {
-                X509TrustManager xtm = (X509TrustManager) tm;
+        String key = snapshot.getVersion() + ":" + CertificateValidationCache.fingerprint(chain);
+        CertificateValidationCache.Result cached = validationCache.get(key);
+        if (cached != null) {
+            if (!cached.isTrusted()) {
+                throw cached.getFailure();
+            }
+            return;
+        }
+
+        try {
+            X509TrustManager[] trustManagers = snapshot.getTrustManagers();
+            if (trustManagers.length == 0) {
+                throw new CertificateException("No trusted certificates");
+            }
+            for (X509TrustManager xtm : trustManagers) {
                 xtm.checkServerTrusted(chain, authType);
             }
+        } catch (CertificateException e) {
+            validationCache.put(key, chain, e);
+            throw e;
         }
+        validationCache.put(key, chain, null);
     }
 
     private static boolean isAlgorithmSupported(String name, String uri) {
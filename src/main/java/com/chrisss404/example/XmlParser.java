@@ -0,0 +1,37 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import org.w3c.dom.Document;
+
+import java.io.InputStream;
+
+/**
+ * Turns XML input into DOM documents. Implementations must be safe for use by multiple concurrent threads.
+ */
+public interface XmlParser {
+
+    /**
+     * Creates a DOM document from a given XML input.
+     *
+     * @param xmlInputStream The XML input source.
+     * @return The generated dom document.
+     * @throws InvalidDocumentException in case the input is not a well-formed XML document.
+     */
+    Document parse(InputStream xmlInputStream);
+
+}
@@ -0,0 +1,46 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import javax.xml.crypto.dsig.XMLSignatureFactory;
+
+/**
+ * Hands out one DOM XMLSignatureFactory per thread.
+ * <p>
+ * JSR 105 only guarantees the static methods of XMLSignatureFactory to be thread safe, so a factory must not be
+ * shared by threads verifying or signing concurrently.
+ */
+final class XmlSignatureFactories {
+
+    private static final ThreadLocal<XMLSignatureFactory> FACTORIES = new ThreadLocal<XMLSignatureFactory>() {
+        @Override
+        protected XMLSignatureFactory initialValue() {
+            return XMLSignatureFactory.getInstance("DOM");
+        }
+    };
+
+    private XmlSignatureFactories() {
+    }
+
+    /**
+     * @return The factory of the calling thread.
+     */
+    static XMLSignatureFactory get() {
+        return FACTORIES.get();
+    }
+
+}
@@ -18,36 +18,140 @@ package com.chrisss404.example;
 
 import org.w3c.dom.Document;
 
-import javax.xml.crypto.MarshalException;
-import javax.xml.crypto.dsig.CanonicalizationMethod;
-import javax.xml.crypto.dsig.DigestMethod;
-import javax.xml.crypto.dsig.Reference;
-import javax.xml.crypto.dsig.SignedInfo;
-import javax.xml.crypto.dsig.Transform;
-import javax.xml.crypto.dsig.XMLSignature;
-import javax.xml.crypto.dsig.XMLSignatureException;
-import javax.xml.crypto.dsig.XMLSignatureFactory;
-import javax.xml.crypto.dsig.dom.DOMSignContext;
-import javax.xml.crypto.dsig.keyinfo.KeyInfo;
-import javax.xml.crypto.dsig.keyinfo.KeyInfoFactory;
-import javax.xml.crypto.dsig.keyinfo.X509Data;
-import javax.xml.crypto.dsig.spec.C14NMethodParameterSpec;
-import javax.xml.crypto.dsig.spec.TransformParameterSpec;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
-import java.security.InvalidAlgorithmParameterException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
 import java.security.KeyStore;
-import java.security.NoSuchAlgorithmException;
-import java.security.cert.X509Certificate;
-import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 /**
  * The XmlSigner class is responsible for signing a given xml document.
  */
 public class XmlSigner {
 
-    private static XMLSignatureFactory sf = XMLSignatureFactory.getInstance("DOM");
+    private final XmlParser parser;
+
+    private final SignatureMethod signatureMethod;
+
+    private final Metrics metrics;
+
+    private final ReferenceResolver resolver;
+
+    private final ExecutorService digestExecutor;
+
+    private final DigestCache digestCache;
+
+    private final SigningProfile profile;
+
+    private final SigningCredentials credentials;
+
+    /**
+     * Constructs a XmlSigner instance using the default XML parser, choosing the signature method from the type of
+     * the private key.
+     */
+    public XmlSigner() {
+        this(builder());
+    }
+
+    /**
+     * Constructs a XmlSigner instance using the default XML parser.
+     *
+     * @param signatureMethod The method used to sign the documents, or null to choose it from the type of the
+     *                        private key.
+     */
+    public XmlSigner(SignatureMethod signatureMethod) {
+        this(builder().signatureMethod(signatureMethod));
+    }
+
+    private XmlSigner(Builder builder) {
+        this.parser = builder.parser;
+        this.signatureMethod = builder.signatureMethod;
+        this.metrics = builder.metrics;
+        this.resolver = builder.resolver;
+        this.digestExecutor = builder.digestExecutor;
+        this.digestCache = builder.digestCache;
+        this.profile = builder.profile;
+        this.credentials = builder.credentials;
+    }
+
+    /**
+     * Starts building a XmlSigner instance with further dependencies.
+     *
+     * @return The builder, defaulting to the default parser, the signature method matching the private key, no
+     * metrics, no caches and the inclusive profile.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Opens a session signing any number of documents with the given private key.
+     * <p>
+     * The methods of this class signing a single document open a new session for it, so that no key is kept
+     * reachable after the call. Callers signing many documents with the same key reuse the prepared signature parts
+     * and the signature engine by keeping a session of their own.
+     *
+     * @param privateKeyEntry The private key used to sign the XML documents.
+     * @return The session.
+     */
+    public SigningSession openSession(KeyStore.PrivateKeyEntry privateKeyEntry) {
+        return new SigningSession(parser, signatureMethod, privateKeyEntry, metrics, resolver, digestExecutor,
+                digestCache, profile, null);
+    }
+
+    /**
+     * Opens a session signing any number of documents with the signing key of the given alias.
+     * <p>
+     * The session keeps the key reachable even after it has been evicted from the registry.
+     *
+     * @param alias The alias of the signing key in the registry of signing credentials.
+     * @return The session.
+     */
+    public SigningSession openSession(String alias) {
+        SigningCredentials.Credential credential = getCredential(alias);
+        return new SigningSession(parser, signatureMethod, credential.getPrivateKeyEntry(), metrics, resolver,
+                digestExecutor, digestCache, profile, credential.getKeyInfo());
+    }
+
+    /**
+     * Signs the given xml document with the signing key of the given alias.
+     *
+     * @param xmlToSign The XML document to sign.
+     * @param alias     The alias of the signing key in the registry of signing credentials.
+     * @return The signed XML document.
+     */
+    public Document sign(InputStream xmlToSign, String alias) {
+        return openSession(alias).sign(xmlToSign);
+    }
+
+    /**
+     * Signs the given xml document with the signing key of the given alias and writes it to the given stream.
+     *
+     * @param xmlToSign The XML document to sign.
+     * @param signedXml The stream receiving the signed XML document.
+     * @param alias     The alias of the signing key in the registry of signing credentials.
+     * @see SigningSession#signAndSerialize(InputStream, OutputStream)
+     */
+    public void signAndSerialize(InputStream xmlToSign, OutputStream signedXml, String alias) {
+        openSession(alias).signAndSerialize(xmlToSign, signedXml);
+    }
+
+    /**
+     * Signs the given xml document with the signing key of the given alias without loading it into memory.
+     *
+     * @param xmlToSign The XML document to sign.
+     * @param signedXml The stream receiving the signed XML document.
+     * @param alias     The alias of the signing key in the registry of signing credentials.
+     * @see SigningSession#sign(InputStream, OutputStream)
+     */
+    public void sign(InputStream xmlToSign, OutputStream signedXml, String alias) {
+        openSession(alias).sign(xmlToSign, signedXml);
+    }
 
     /**
      * Signs the given xml document.
@@ -57,45 +161,257 @@ public class XmlSigner {
      * @return The signed XML document.
      */
     public Document sign(InputStream xmlToSign, KeyStore.PrivateKeyEntry privateKeyEntry) {
-        try {
-            Document docToSign = Utility.loadXmlDocument(xmlToSign);
+        return openSession(privateKeyEntry).sign(xmlToSign);
+    }
+
+    /**
+     * Signs the given xml document with an enveloped signature covering the whole document and the given further
+     * references.
+     *
+     * @param xmlToSign       The XML document to sign.
+     * @param references      The URIs of the further references, either #ID or external.
+     * @param privateKeyEntry The private key used to sign the XML document.
+     * @return The signed XML document.
+     * @see SigningSession#sign(InputStream, List)
+     */
+    public Document sign(InputStream xmlToSign, List<String> references, KeyStore.PrivateKeyEntry privateKeyEntry) {
+        return openSession(privateKeyEntry).sign(xmlToSign, references);
+    }
 
-            SignedInfo si = buildSignedInfo();
-            KeyInfo ki = buildKeyInfo(privateKeyEntry);
-            XMLSignature signature = sf.newXMLSignature(si, ki);
+    /**
+     * Signs every element of the given xml document that has the given local name and an ID, each by its own
+     * reference within one signature.
+     *
+     * @param xmlToSign       The XML document to sign.
+     * @param localName       The local name of the elements to sign, in any namespace.
+     * @param privateKeyEntry The private key used to sign the XML document.
+     * @return The signed XML document.
+     * @see SigningSession#signElements(InputStream, String)
+     */
+    public Document signElements(InputStream xmlToSign, String localName, KeyStore.PrivateKeyEntry privateKeyEntry) {
+        return openSession(privateKeyEntry).signElements(xmlToSign, localName);
+    }
 
-            DOMSignContext dsc = new DOMSignContext(privateKeyEntry.getPrivateKey(), docToSign.getDocumentElement());
-            signature.sign(dsc);
+    /**
+     * Creates a detached signature of the given external resources.
+     *
+     * @param references      The URIs of the external resources.
+     * @param privateKeyEntry The private key used to sign the resources.
+     * @return A document holding nothing but the signature.
+     * @see SigningSession#signDetached(List)
+     */
+    public Document signDetached(List<String> references, KeyStore.PrivateKeyEntry privateKeyEntry) {
+        return openSession(privateKeyEntry).signDetached(references);
+    }
 
-            return docToSign;
-        } catch (InvalidAlgorithmParameterException | InvalidDocumentException | MarshalException |
-                NoSuchAlgorithmException | XMLSignatureException e) {
+    /**
+     * Signs the given xml document.
+     *
+     * @param xmlToSign       The buffer holding the XML document to sign between its position and limit.
+     * @param privateKeyEntry The private key used to sign the XML document.
+     * @return The signed XML document.
+     */
+    public Document signBuffer(ByteBuffer xmlToSign, KeyStore.PrivateKeyEntry privateKeyEntry) {
+        return sign(new ByteBufferInputStream(xmlToSign), privateKeyEntry);
+    }
+
+    /**
+     * Signs the given xml document.
+     *
+     * @param xmlToSign       The array holding the XML document to sign.
+     * @param offset          The offset of the XML document in the array.
+     * @param length          The length of the XML document.
+     * @param privateKeyEntry The private key used to sign the XML document.
+     * @return The signed XML document.
+     */
+    public Document sign(byte[] xmlToSign, int offset, int length, KeyStore.PrivateKeyEntry privateKeyEntry) {
+        return sign(new ByteArrayInputStream(xmlToSign, offset, length), privateKeyEntry);
+    }
+
+    /**
+     * Signs the given xml file. The file is mapped into memory.
+     *
+     * @param xmlToSign       The XML file to sign.
+     * @param privateKeyEntry The private key used to sign the XML document.
+     * @return The signed XML document.
+     */
+    public Document signFile(Path xmlToSign, KeyStore.PrivateKeyEntry privateKeyEntry) {
+        return sign(map(xmlToSign), privateKeyEntry);
+    }
+
+    /**
+     * Signs the given xml document and writes it to the given stream, keeping the document as it is. The output
+     * buffer of the calling thread is reused.
+     *
+     * @param xmlToSign       The XML document to sign.
+     * @param signedXml       The stream receiving the signed XML document.
+     * @param privateKeyEntry The private key used to sign the XML document.
+     * @see SigningSession#signAndSerialize(InputStream, OutputStream)
+     */
+    public void signAndSerialize(InputStream xmlToSign, OutputStream signedXml,
+                                 KeyStore.PrivateKeyEntry privateKeyEntry) {
+        openSession(privateKeyEntry).signAndSerialize(xmlToSign, signedXml);
+    }
+
+    /**
+     * Signs the given xml document and writes it to the given channel, keeping the document as it is. The output
+     * buffer of the calling thread is reused.
+     *
+     * @param xmlToSign       The XML document to sign.
+     * @param signedXml       The channel receiving the signed XML document.
+     * @param privateKeyEntry The private key used to sign the XML document.
+     * @see SigningSession#signAndSerialize(InputStream, OutputStream)
+     */
+    public void signAndSerialize(InputStream xmlToSign, WritableByteChannel signedXml,
+                                 KeyStore.PrivateKeyEntry privateKeyEntry) {
+        openSession(privateKeyEntry).signAndSerialize(xmlToSign, signedXml);
+    }
+
+    /**
+     * Signs the given xml document without loading it into memory.
+     * <p>
+     * The document is written to the output in its canonical form, with the enveloped signature inserted before the
+     * closing tag of the document element. Comments are not part of the canonical form and therefore dropped.
+     *
+     * @param xmlToSign       The XML document to sign.
+     * @param signedXml       The stream receiving the signed XML document.
+     * @param privateKeyEntry The private key used to sign the XML document.
+     */
+    public void sign(InputStream xmlToSign, OutputStream signedXml, KeyStore.PrivateKeyEntry privateKeyEntry) {
+        openSession(privateKeyEntry).sign(xmlToSign, signedXml);
+    }
+
+    /**
+     * Signs the given xml file without loading it into memory. The file is mapped into memory.
+     *
+     * @param xmlToSign       The XML file to sign.
+     * @param signedXml       The stream receiving the signed XML document.
+     * @param privateKeyEntry The private key used to sign the XML document.
+     */
+    public void signFile(Path xmlToSign, OutputStream signedXml, KeyStore.PrivateKeyEntry privateKeyEntry) {
+        sign(map(xmlToSign), signedXml, privateKeyEntry);
+    }
+
+    private static InputStream map(Path file) {
+        try {
+            return ByteBufferInputStream.map(file);
+        } catch (IOException e) {
             throw new XmlSignatureException("Failed signing XML", e);
         }
     }
 
-    private static SignedInfo buildSignedInfo() throws InvalidAlgorithmParameterException, NoSuchAlgorithmException {
-        Reference ref = sf.newReference(
-                "", sf.newDigestMethod(DigestMethod.SHA256, null),
-                Collections.singletonList(sf.newTransform(Transform.ENVELOPED, (TransformParameterSpec) null)),
-                null, null
-        );
-
-        return sf.newSignedInfo(
-                sf.newCanonicalizationMethod(CanonicalizationMethod.INCLUSIVE, (C14NMethodParameterSpec) null),
-                sf.newSignatureMethod(SignatureMethod.RSA_SHA256.getUri(), null),
-                Collections.singletonList(ref)
-        );
+    private SigningCredentials.Credential getCredential(String alias) {
+        if (credentials == null) {
+            throw new IllegalStateException("Signing by alias requires signing credentials");
+        }
+        return credentials.get(alias);
     }
 
-    private static KeyInfo buildKeyInfo(KeyStore.PrivateKeyEntry privateKeyEntry) {
-        X509Certificate cert = (X509Certificate) privateKeyEntry.getCertificate();
-        List x509Content = Arrays.asList(cert.getSubjectX500Principal().getName(), cert);
+    /**
+     * Collects the dependencies of a XmlSigner instance.
+     */
+    public static final class Builder {
+
+        private XmlParser parser = PooledXmlParser.getDefault();
+
+        private SignatureMethod signatureMethod;
+
+        private Metrics metrics = NoOpMetrics.INSTANCE;
+
+        private ReferenceResolver resolver;
 
-        KeyInfoFactory kif = sf.getKeyInfoFactory();
-        X509Data xd = kif.newX509Data(x509Content);
+        private ExecutorService digestExecutor;
 
-        return kif.newKeyInfo(Collections.singletonList(xd));
+        private DigestCache digestCache;
+
+        private SigningProfile profile = SigningProfile.INCLUSIVE;
+
+        private SigningCredentials credentials;
+
+        private Builder() {
+        }
+
+        /**
+         * @param parser The parser used to load the documents to sign.
+         * @return This builder.
+         */
+        public Builder parser(XmlParser parser) {
+            this.parser = parser;
+            return this;
+        }
+
+        /**
+         * @param signatureMethod The method used to sign the documents, or null to choose it from the type of the
+         *                        private key.
+         * @return This builder.
+         */
+        public Builder signatureMethod(SignatureMethod signatureMethod) {
+            this.signatureMethod = signatureMethod;
+            return this;
+        }
+
+        /**
+         * @param metrics The metrics receiving the timings of all signings.
+         * @return This builder.
+         */
+        public Builder metrics(Metrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * @param resolver The resolver opening the resources of external references.
+         * @return This builder.
+         */
+        public Builder resolver(ReferenceResolver resolver) {
+            this.resolver = resolver;
+            return this;
+        }
+
+        /**
+         * @param digestExecutor The executor digesting external references in parallel, or null to digest them on
+         *                       the signing thread.
+         * @return This builder.
+         */
+        public Builder digestExecutor(ExecutorService digestExecutor) {
+            this.digestExecutor = digestExecutor;
+            return this;
+        }
+
+        /**
+         * @param digestCache The cache of the digest values of elements referenced by ID, or null to digest every
+         *                    element again.
+         * @return This builder.
+         */
+        public Builder digestCache(DigestCache digestCache) {
+            this.digestCache = digestCache;
+            return this;
+        }
+
+        /**
+         * @param profile The canonicalization of SignedInfo and the signed content.
+         * @return This builder.
+         */
+        public Builder profile(SigningProfile profile) {
+            this.profile = profile;
+            return this;
+        }
+
+        /**
+         * @param credentials The registry of the unlocked signing keys used when signing by alias, or null.
+         * @return This builder.
+         */
+        public Builder credentials(SigningCredentials credentials) {
+            this.credentials = credentials;
+            return this;
+        }
+
+        /**
+         * @return The XmlSigner instance.
+         */
+        public XmlSigner build() {
+            return new XmlSigner(this);
+        }
     }
 
 }
@@ -17,30 +17,65 @@
 package com.chrisss404.example;
 
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import javax.xml.crypto.KeySelector;
+import javax.xml.crypto.KeySelectorException;
+import javax.xml.crypto.KeySelectorResult;
 import javax.xml.crypto.MarshalException;
+import javax.xml.crypto.URIReferenceException;
 import javax.xml.crypto.dsig.Reference;
+import javax.xml.crypto.dsig.SignedInfo;
 import javax.xml.crypto.dsig.XMLSignature;
 import javax.xml.crypto.dsig.XMLSignatureException;
-import javax.xml.crypto.dsig.XMLSignatureFactory;
 import javax.xml.crypto.dsig.dom.DOMValidateContext;
+import java.io.ByteArrayInputStream;
+import java.io.CharConversionException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 
 /**
  * The XmlVerifier class is responsible for validating a given xml document.
+ * <p>
+ * Instances are safe for use by multiple concurrent threads, given the parser and key selector are as well.
  */
 public class XmlVerifier {
 
-    private static XMLSignatureFactory sf = XMLSignatureFactory.getInstance("DOM");
+    private final X509KeySelector keySelector;
 
-    private final KeyStore keyStore;
+    private final XmlParser parser;
+
+    private final Metrics metrics;
+
+    private final VerificationPolicy policy;
+
+    private final ReferenceResolver resolver;
+
+    private final ExecutorService digestExecutor;
+
+    private final DigestCache digestCache;
+
+    private final VerificationResultCache resultCache;
 
     /**
      * Constructs a XmlVerifier instance with all its dependencies.
@@ -48,48 +83,769 @@ public class XmlVerifier {
      * @param keyStore The keystore holds the trusted certificates.
      */
     public XmlVerifier(KeyStore keyStore) {
-        this.keyStore = keyStore;
+        this(new X509KeySelector(keyStore));
     }
 
     /**
-     * Verifies that a given XML document is valid.
+     * Constructs a XmlVerifier instance with all its dependencies.
+     *
+     * @param keySelector The key selector validating the signing certificates.
+     */
+    public XmlVerifier(X509KeySelector keySelector) {
+        this(builder(keySelector));
+    }
+
+    private XmlVerifier(Builder builder) {
+        this.keySelector = builder.keySelector;
+        this.parser = builder.parser;
+        this.metrics = builder.metrics;
+        this.policy = builder.policy;
+        this.resolver = builder.resolver;
+        this.digestExecutor = builder.digestExecutor;
+        this.digestCache = builder.digestCache;
+        this.resultCache = builder.resultCache;
+    }
+
+    /**
+     * Starts building a XmlVerifier instance with further dependencies.
+     *
+     * @param keySelector The key selector validating the signing certificates.
+     * @return The builder, defaulting to the default parser, no metrics, the complete policy and no caches.
+     */
+    public static Builder builder(X509KeySelector keySelector) {
+        return new Builder(keySelector);
+    }
+
+    /**
+     * Discards all cached trust decisions. Must be called whenever the keystore holding the trusted certificates
+     * has been modified.
+     */
+    public void refresh() {
+        keySelector.refresh();
+        if (resultCache != null) {
+            resultCache.invalidateAll();
+        }
+    }
+
+    /**
+     * Verifies that a given XML document is valid. Only the first Signature element of the document is verified, see
+     * {@link #verifySignatures(InputStream, SignatureQuorum, ExecutorService)} for documents signed by several
+     * parties.
      *
      * @param xmlToVerify The XML document to verify.
      * @return The verified XML document.
      */
     public Document verify(InputStream xmlToVerify) {
+        return verify(xmlToVerify, null).document;
+    }
+
+    /**
+     * Verifies that a given XML document is valid, without retaining the verified document.
+     * <p>
+     * With a result cache, the input is read completely while it is digested, and looked up in the cache by its
+     * digest and the version of the current trust snapshot. Only if it has not been verified against that snapshot
+     * before is it parsed and verified. Without a result cache, the input is verified as it is read.
+     * <p>
+     * Only outcomes decided by the checks of the document itself are cached. Failures to read the input, the keystore
+     * or external references are reported as errors, as they may not recur.
+     *
+     * @param xmlToVerify The XML document to verify.
+     * @return The outcome of the verification. A valid result holds no document.
+     */
+    public VerificationResult verifyCached(InputStream xmlToVerify) {
+        if (xmlToVerify == null) {
+            throw new IllegalArgumentException("InputStream cannot be null");
+        }
+        if (resultCache == null) {
+            return verifyCached(xmlToVerify, null, null);
+        }
+
+        // the snapshot is pinned for the verification, so that the result is cached under the right version
+        TrustSnapshot snapshot = keySelector.getSnapshot();
+        ExposedByteArrayOutputStream xml = new ExposedByteArrayOutputStream();
+        String key;
+        MessageDigest md = null;
+        byte[] buffer = BufferPool.acquire();
+        try {
+            md = EnginePool.acquire(DigestAlgorithm.SHA256.getName());
+            for (int n; (n = xmlToVerify.read(buffer)) != -1; ) {
+                xml.write(buffer, 0, n);
+                md.update(buffer, 0, n);
+            }
+            key = VerificationResultCache.key(snapshot, md.digest());
+        } catch (IOException | NoSuchAlgorithmException e) {
+            return VerificationResult.error(e);
+        } finally {
+            BufferPool.release(buffer);
+            EnginePool.release(md);
+        }
+        return verifyCached(new ByteArrayInputStream(xml.getBuffer(), 0, xml.size()), snapshot, key);
+    }
+
+    /**
+     * Verifies that a given XML document is valid, without retaining the verified document.
+     *
+     * @param xmlToVerify The array holding the XML document to verify.
+     * @param offset      The offset of the XML document in the array.
+     * @param length      The length of the XML document.
+     * @return The outcome of the verification. A valid result holds no document.
+     * @see #verifyCached(InputStream)
+     */
+    public VerificationResult verifyCached(byte[] xmlToVerify, int offset, int length) {
+        InputStream in = new ByteArrayInputStream(xmlToVerify, offset, length);
+        if (resultCache == null) {
+            return verifyCached(in, null, null);
+        }
+        TrustSnapshot snapshot = keySelector.getSnapshot();
+        try {
+            return verifyCached(in, snapshot, VerificationResultCache.key(snapshot, xmlToVerify, offset, length));
+        } catch (NoSuchAlgorithmException e) {
+            return VerificationResult.error(e);
+        }
+    }
+
+    /**
+     * Looks up the result of the given key, or verifies the document against the given snapshot and caches the
+     * result.
+     */
+    private VerificationResult verifyCached(InputStream xmlToVerify, TrustSnapshot snapshot, String key) {
+        VerificationResult result = key == null ? null : resultCache.get(key);
+        if (result != null) {
+            return result;
+        }
+        X509Certificate signer = null;
+        try {
+            signer = verify(xmlToVerify, snapshot).signer;
+            result = VerificationResult.valid(null);
+        } catch (XmlVerificationException e) {
+            result = isTransient(e) ? VerificationResult.error(e) : VerificationResult.invalid(e);
+        } catch (RuntimeException e) {
+            result = VerificationResult.error(e);
+        }
+        if (key != null) {
+            resultCache.put(key, result, signer);
+        }
+        return result;
+    }
+
+    /**
+     * @return Whether the given failure was caused by reading the keystore or external resources rather than by the
+     * checks of the document, so that it may not recur. Malformed encodings are reported by the parser as
+     * CharConversionException, but are part of the document.
+     */
+    private static boolean isTransient(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof CharConversionException) {
+                return false;
+            }
+            if (cause instanceof IOException || cause instanceof KeyStoreException ||
+                    cause instanceof URIReferenceException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Verification verify(InputStream xmlToVerify, TrustSnapshot snapshot) {
+        PhaseTimer timer = PhaseTimer.start(metrics, Metrics.Operation.VERIFY);
         try {
-            Document docToVerify = Utility.loadXmlDocument(xmlToVerify);
-            validateSignature(docToVerify, keyStore);
-            return docToVerify;
+            Document docToVerify = parser.parse(timer.count(xmlToVerify));
+            timer.phase(Metrics.Phase.PARSE);
+            X509Certificate signer = validateSignature(docToVerify, timer, snapshot);
+            timer.succeed();
+            return new Verification(docToVerify, signer);
         } catch (CertificateException | InvalidDocumentException | IOException | KeyStoreException | MarshalException |
                 NoSuchAlgorithmException | XMLSignatureException e) {
+            timer.fail(e);
             throw new XmlVerificationException(String.format("Signature verification failed: %s", e.getMessage()), e);
+        } catch (RuntimeException e) {
+            timer.fail(e);
+            throw e;
         }
     }
 
-    private static void validateSignature(Document doc, KeyStore keyStore) throws XMLSignatureException, MarshalException, CertificateException, NoSuchAlgorithmException, KeyStoreException, IOException {
+    /**
+     * Verifies that a given XML document is valid.
+     *
+     * @param xmlToVerify The buffer holding the XML document to verify between its position and limit.
+     * @return The verified XML document.
+     */
+    public Document verifyBuffer(ByteBuffer xmlToVerify) {
+        return verify(new ByteBufferInputStream(xmlToVerify));
+    }
+
+    /**
+     * Verifies that a given XML document is valid.
+     *
+     * @param xmlToVerify The array holding the XML document to verify.
+     * @param offset      The offset of the XML document in the array.
+     * @param length      The length of the XML document.
+     * @return The verified XML document.
+     */
+    public Document verify(byte[] xmlToVerify, int offset, int length) {
+        return verify(new ByteArrayInputStream(xmlToVerify, offset, length));
+    }
+
+    /**
+     * Verifies that a given XML file is valid. The file is mapped into memory.
+     *
+     * @param xmlToVerify The XML file to verify.
+     * @return The verified XML document.
+     */
+    public Document verifyFile(Path xmlToVerify) {
+        InputStream in;
+        try {
+            in = ByteBufferInputStream.map(xmlToVerify);
+        } catch (IOException e) {
+            throw new XmlVerificationException(String.format("Signature verification failed: %s", e.getMessage()), e);
+        }
+        return verify(in);
+    }
+
+    /**
+     * Verifies the given XML document on the given executor.
+     *
+     * @param xmlToVerify The XML document to verify.
+     * @param executor    The executor running the verification.
+     * @return The future result of the verification.
+     */
+    public Future<VerificationResult> verifyAsync(InputStream xmlToVerify, ExecutorService executor) {
+        return executor.submit(newVerificationTask(xmlToVerify, null));
+    }
+
+    /**
+     * Verifies all given XML documents concurrently on the given executor and waits for the results.
+     *
+     * @param xmlsToVerify The XML documents to verify.
+     * @param executor     The executor running the verifications.
+     * @return The results of the verifications, in the order of the input.
+     */
+    public List<VerificationResult> verifyAll(Collection<? extends InputStream> xmlsToVerify,
+                                              ExecutorService executor) {
+        return verifyAll(xmlsToVerify, executor, Math.max(1, xmlsToVerify.size()));
+    }
+
+    /**
+     * Verifies all given XML documents concurrently on the given executor and waits for the results.
+     * <p>
+     * No more than the given number of documents are submitted to the executor at once. Further documents are only
+     * submitted when earlier verifications have completed, which keeps the number of open input streams and parsed
+     * documents bounded.
+     *
+     * @param xmlsToVerify    The XML documents to verify.
+     * @param executor        The executor running the verifications.
+     * @param maximumInFlight The maximum number of documents being verified at once.
+     * @return The results of the verifications, in the order of the input.
+     */
+    public List<VerificationResult> verifyAll(Collection<? extends InputStream> xmlsToVerify,
+                                              ExecutorService executor, int maximumInFlight) {
+        if (maximumInFlight < 1) {
+            throw new IllegalArgumentException("Maximum number of documents in flight must be positive");
+        }
+
+        Semaphore permits = new Semaphore(maximumInFlight);
+        List<Future<VerificationResult>> futures = new ArrayList<>(xmlsToVerify.size());
+        VerificationResult[] results = new VerificationResult[xmlsToVerify.size()];
+        try {
+            for (InputStream xmlToVerify : xmlsToVerify) {
+                permits.acquire();
+                try {
+                    futures.add(executor.submit(newVerificationTask(xmlToVerify, permits)));
+                } catch (RejectedExecutionException e) {
+                    permits.release();
+                    results[futures.size()] = VerificationResult.error(e);
+                    futures.add(null);
+                }
+            }
+
+            for (int i = 0; i < results.length; i++) {
+                if (results[i] == null) {
+                    try {
+                        results[i] = futures.get(i).get();
+                    } catch (ExecutionException e) {
+                        results[i] = VerificationResult.error(e.getCause());
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            for (Future<VerificationResult> future : futures) {
+                if (future != null) {
+                    future.cancel(true);
+                }
+            }
+            Thread.currentThread().interrupt();
+            throw new XmlVerificationException("Verification has been interrupted", e);
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Verifies all signatures of a given XML document, reporting the outcome and the signer of every signature.
+     * <p>
+     * Without an executor, the document is parsed once and all signatures are verified one after the other on the
+     * calling thread. With an executor, the input is buffered, the first signature is verified on the calling thread
+     * and the others on the executor. As a DOM tree must not be read by several threads at once, every task parses
+     * its own tree from the buffered input, so the parsing runs in parallel as well. All signatures are validated
+     * against the same snapshot of the trusted certificates.
+     *
+     * @param xmlToVerify The XML document to verify.
+     * @param quorum      The number of signatures that have to be valid.
+     * @param executor    The executor verifying all but the first signature, or null to verify them on the calling
+     *                    thread.
+     * @return The outcome of every signature, and whether they satisfy the quorum.
+     * @throws XmlVerificationException in case the document cannot be parsed or has no signature.
+     */
+    public MultiSignatureResult verifySignatures(InputStream xmlToVerify, SignatureQuorum quorum,
+                                                 ExecutorService executor) {
+        if (xmlToVerify == null) {
+            throw new IllegalArgumentException("InputStream cannot be null");
+        }
+
+        PhaseTimer timer = PhaseTimer.start(metrics, Metrics.Operation.VERIFY);
+        try {
+            ExposedByteArrayOutputStream xml = null;
+            InputStream input = timer.count(xmlToVerify);
+            if (executor != null) {
+                xml = new ExposedByteArrayOutputStream();
+                byte[] buffer = BufferPool.acquire();
+                try {
+                    for (int n; (n = input.read(buffer)) != -1; ) {
+                        xml.write(buffer, 0, n);
+                    }
+                } finally {
+                    BufferPool.release(buffer);
+                }
+                input = new ByteArrayInputStream(xml.getBuffer(), 0, xml.size());
+            }
+            Document docToVerify = parser.parse(input);
+            timer.phase(Metrics.Phase.PARSE);
+            NodeList nl = docToVerify.getElementsByTagNameNS(XMLSignature.XMLNS, "Signature");
+            if (nl.getLength() == 0) {
+                throw new XmlVerificationException("Cannot find Signature element");
+            }
+
+            TrustSnapshot snapshot = keySelector.getSnapshot();
+            SignatureResult[] results = new SignatureResult[nl.getLength()];
+            List<Future<SignatureResult>> futures = new ArrayList<>();
+            if (executor != null) {
+                for (int i = 1; i < results.length; i++) {
+                    try {
+                        futures.add(executor.submit(newSignatureTask(i, xml.getBuffer(), xml.size(), snapshot)));
+                    } catch (RejectedExecutionException e) {
+                        results[i] = SignatureResult.error(i, e);
+                        futures.add(null);
+                    }
+                }
+            }
+
+            results[0] = verifySignature(0, newValidateContext(docToVerify, (Element) nl.item(0), timer, snapshot),
+                    timer);
+            for (int i = 1; i < results.length; i++) {
+                if (executor == null) {
+                    PhaseTimer signatureTimer = PhaseTimer.start(metrics, Metrics.Operation.VERIFY);
+                    results[i] = verifySignature(i, newValidateContext(docToVerify, (Element) nl.item(i),
+                            signatureTimer, snapshot), signatureTimer);
+                } else if (results[i] == null) {
+                    results[i] = awaitSignature(i, futures);
+                }
+            }
+
+            MultiSignatureResult result = new MultiSignatureResult(docToVerify, quorum, Arrays.asList(results));
+            if (result.isValid()) {
+                timer.succeed();
+            } else {
+                timer.fail(new XmlVerificationException(result.getReason()));
+            }
+            return result;
+        } catch (InvalidDocumentException | IOException e) {
+            timer.fail(e);
+            throw new XmlVerificationException(String.format("Signature verification failed: %s", e.getMessage()), e);
+        } catch (RuntimeException e) {
+            timer.fail(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Creates the task verifying the signature of the given index on its own tree, parsed from the buffered input.
+     */
+    private Callable<SignatureResult> newSignatureTask(final int index, final byte[] xml, final int length,
+                                                       final TrustSnapshot snapshot) {
+        return new Callable<SignatureResult>() {
+            @Override
+            public SignatureResult call() {
+                PhaseTimer timer = PhaseTimer.start(metrics, Metrics.Operation.VERIFY);
+                try {
+                    Document doc = parser.parse(timer.count(new ByteArrayInputStream(xml, 0, length)));
+                    timer.phase(Metrics.Phase.PARSE);
+                    Element signatureElement = (Element) doc.getElementsByTagNameNS(XMLSignature.XMLNS,
+                            "Signature").item(index);
+                    return verifySignature(index, newValidateContext(doc, signatureElement, timer, snapshot), timer);
+                } catch (InvalidDocumentException e) {
+                    return SignatureResult.error(index, e);
+                }
+            }
+        };
+    }
+
+    private static SignatureResult awaitSignature(int index, List<Future<SignatureResult>> futures) {
+        try {
+            return futures.get(index - 1).get();
+        } catch (ExecutionException e) {
+            return SignatureResult.error(index, e.getCause());
+        } catch (InterruptedException e) {
+            for (Future<SignatureResult> future : futures) {
+                if (future != null) {
+                    future.cancel(true);
+                }
+            }
+            Thread.currentThread().interrupt();
+            throw new XmlVerificationException("Verification has been interrupted", e);
+        }
+    }
+
+    private SignatureResult verifySignature(int index, DOMValidateContext dvc, PhaseTimer timer) {
+        try {
+            validateSignature(dvc, timer);
+            return SignatureResult.valid(index, X509KeySelector.getSigner(dvc));
+        } catch (CertificateException | InvalidDocumentException | IOException | KeyStoreException | MarshalException |
+                NoSuchAlgorithmException | XMLSignatureException e) {
+            return SignatureResult.invalid(index, X509KeySelector.getSigner(dvc), new XmlVerificationException(
+                    String.format("Signature verification failed: %s", e.getMessage()), e));
+        } catch (XmlVerificationException e) {
+            return SignatureResult.invalid(index, X509KeySelector.getSigner(dvc), e);
+        } catch (RuntimeException e) {
+            return SignatureResult.error(index, e);
+        }
+    }
+
+    private Callable<VerificationResult> newVerificationTask(final InputStream xmlToVerify, final Semaphore permits) {
+        return new Callable<VerificationResult>() {
+            @Override
+            public VerificationResult call() {
+                try {
+                    return VerificationResult.valid(verify(xmlToVerify));
+                } catch (XmlVerificationException e) {
+                    return VerificationResult.invalid(e);
+                } catch (RuntimeException e) {
+                    return VerificationResult.error(e);
+                } finally {
+                    if (permits != null) {
+                        permits.release();
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * @return The certificate of the signer.
+     */
+    private X509Certificate validateSignature(Document doc, PhaseTimer timer, TrustSnapshot snapshot) throws XMLSignatureException, MarshalException, CertificateException, NoSuchAlgorithmException, KeyStoreException, IOException {
         NodeList nl = doc.getElementsByTagNameNS(XMLSignature.XMLNS, "Signature");
         if (nl.getLength() == 0) {
             throw new XmlVerificationException("Cannot find Signature element");
         }
+        DOMValidateContext dvc = newValidateContext(doc, (Element) nl.item(0), timer, snapshot);
+        validateSignature(dvc, timer);
+        return X509KeySelector.getSigner(dvc);
+    }
 
-        DOMValidateContext dvc = new DOMValidateContext(new X509KeySelector(keyStore), nl.item(0));
-        XMLSignature signature = sf.unmarshalXMLSignature(dvc);
+    /**
+     * Creates the validate context of the given Signature element. Registering the IDs modifies the document, so this
+     * must not happen while another thread reads it.
+     */
+    private DOMValidateContext newValidateContext(Document doc, Element signatureElement, PhaseTimer timer,
+                                                  TrustSnapshot snapshot) {
+        DOMValidateContext dvc = new DOMValidateContext(timer.time(keySelector), signatureElement);
+        if (snapshot != null) {
+            X509KeySelector.pin(dvc, snapshot);
+        }
+        ReferenceDigests.registerIds(doc, dvc);
+        if (resolver != null) {
+            dvc.setURIDereferencer(ReferenceDigests.dereferencer(resolver,
+                    XmlSignatureFactories.get().getURIDereferencer()));
+        }
+        return dvc;
+    }
+
+    private void validateSignature(DOMValidateContext dvc, PhaseTimer timer) throws XMLSignatureException, MarshalException, CertificateException, NoSuchAlgorithmException, KeyStoreException, IOException {
+        XMLSignature signature = XmlSignatureFactories.get().unmarshalXMLSignature(dvc);
+        timer.phase(Metrics.Phase.UNMARSHAL);
+
+        SignedInfo signedInfo = signature.getSignedInfo();
+        if (timer.isEnabled()) {
+            timer.setSignatureMethod(SignatureMethod.fromUri(signedInfo.getSignatureMethod().getAlgorithm()));
+        }
+
+        // every result is computed at most once and reused for the diagnostics
+        List references = signedInfo.getReferences();
+        Boolean sv = null;
+        Boolean[] refValid = new Boolean[references.size()];
+        boolean valid = true;
+        for (VerificationPolicy.Check check : policy.getOrder()) {
+            if (!valid && !policy.isDiagnostics()) {
+                break;
+            }
+            switch (check) {
+                case ALGORITHMS:
+                    checkAlgorithms(signedInfo, policy);
+                    break;
+                case TRUSTED_KEY:
+                    selectKey(signature, dvc);
+                    break;
+                case SIGNATURE_VALUE:
+                    sv = signature.getSignatureValue().validate(dvc);
+                    valid &= sv;
+                    timer.phase(Metrics.Phase.SIGNATURE);
+                    break;
+                case REFERENCES:
+                    byte[][] digests = digestExternalReferences(references);
+                    for (int i = 0; i < refValid.length && (valid || policy.isDiagnostics()); i++) {
+                        Reference reference = (Reference) references.get(i);
+                        refValid[i] = digests[i] == null ? validateReference(reference, dvc) :
+                                MessageDigest.isEqual(digests[i], reference.getDigestValue());
+                        valid &= refValid[i];
+                    }
+                    timer.phase(Metrics.Phase.DIGEST);
+                    break;
+                default:
+                    break;
+            }
+        }
 
-        if (!signature.validate(dvc)) {
-            boolean sv = signature.getSignatureValue().validate(dvc);
+        if (!valid) {
             StringBuilder sb = new StringBuilder();
-            sb.append("Signature validation status: ").append(sv);
-            if (!sv) {
-                List references = signature.getSignedInfo().getReferences();
-                for (int i = 0, length = references.size(); i < length; i++) {
-                    boolean refValid = ((Reference) references.get(i)).validate(dvc);
-                    sb.append("\n").append(" - ref[").append(i).append("] validity status: ").append(refValid);
+            sb.append("Signature validation status: ").append(sv == null ? "unchecked" : sv);
+            if (!Boolean.TRUE.equals(sv)) {
+                for (int i = 0; i < refValid.length; i++) {
+                    if (refValid[i] != null) {
+                        sb.append("\n").append(" - ref[").append(i).append("] validity status: ").append(refValid[i]);
+                    }
                 }
             }
             throw new XmlVerificationException(sb.toString());
         }
     }
 
+    /**
+     * Validates a reference, looking up elements referenced by ID in the digest cache first. Digest values computed
+     * by the XML signature API are cached once they turned out to be valid. References to IDs occurring more than once
+     * are rejected, as they are ambiguous and could be used to wrap the signed element.
+     */
+    private boolean validateReference(Reference reference, DOMValidateContext dvc) throws NoSuchAlgorithmException,
+            XMLSignatureException {
+        String uri = reference.getURI();
+        if (uri != null && uri.startsWith("#") && !ReferenceDigests.isUniqueId(dvc, uri.substring(1))) {
+            throw new XmlVerificationException(String.format("Duplicate ID %s", uri.substring(1)));
+        }
+        Element element = digestCache == null || uri == null || !uri.startsWith("#") ||
+                !reference.getTransforms().isEmpty() ? null : dvc.getElementById(uri.substring(1));
+        if (element == null || isAncestor(element, dvc.getNode())) {
+            return reference.validate(dvc);
+        }
+
+        String fingerprint = DigestCache.fingerprint(element, reference.getDigestMethod().getAlgorithm());
+        byte[] digestValue = digestCache.get(fingerprint);
+        if (digestValue != null) {
+            return MessageDigest.isEqual(digestValue, reference.getDigestValue());
+        }
+        boolean valid = reference.validate(dvc);
+        if (valid) {
+            digestCache.put(fingerprint, reference.getDigestValue());
+        }
+        return valid;
+    }
+
+    private static boolean isAncestor(Element element, Node node) {
+        for (Node ancestor = node; ancestor != null; ancestor = ancestor.getParentNode()) {
+            if (ancestor == element) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Digests the untransformed external references in parallel. The other references are left to the XML signature
+     * API.
+     *
+     * @return The digest values, in the order of the references, or null for references not digested here.
+     */
+    private byte[][] digestExternalReferences(List references) throws IOException, NoSuchAlgorithmException {
+        byte[][] digests = new byte[references.size()][];
+        if (resolver == null) {
+            return digests;
+        }
+
+        List<Integer> indexes = new ArrayList<>();
+        List<String> uris = new ArrayList<>();
+        List<DigestAlgorithm> algorithms = new ArrayList<>();
+        for (int i = 0; i < digests.length; i++) {
+            Reference reference = (Reference) references.get(i);
+            DigestAlgorithm algorithm = DigestAlgorithm.fromUri(reference.getDigestMethod().getAlgorithm());
+            if (ReferenceDigests.isExternal(reference.getURI()) && reference.getTransforms().isEmpty() &&
+                    algorithm != null) {
+                indexes.add(i);
+                uris.add(reference.getURI());
+                algorithms.add(algorithm);
+            }
+        }
+
+        byte[][] external = ReferenceDigests.digest(uris, algorithms, resolver, digestExecutor);
+        for (int i = 0; i < external.length; i++) {
+            digests[indexes.get(i)] = external[i];
+        }
+        return digests;
+    }
+
+    private static void checkAlgorithms(SignedInfo signedInfo, VerificationPolicy policy) {
+        String signatureMethod = signedInfo.getSignatureMethod().getAlgorithm();
+        if (!policy.isSignatureMethodAllowed(signatureMethod)) {
+            throw new XmlVerificationException(String.format("Signature method %s is not allowed", signatureMethod));
+        }
+        List references = signedInfo.getReferences();
+        for (int i = 0, size = references.size(); i < size; i++) {
+            String digestMethod = ((Reference) references.get(i)).getDigestMethod().getAlgorithm();
+            if (!policy.isDigestAlgorithmAllowed(digestMethod)) {
+                throw new XmlVerificationException(String.format("Digest method %s is not allowed", digestMethod));
+            }
+        }
+    }
+
+    /**
+     * Selects the validation key up front and hands it to the signature value validation, so that it is not selected
+     * a second time.
+     */
+    private static void selectKey(XMLSignature signature, DOMValidateContext dvc) throws XMLSignatureException {
+        if (signature.getKeyInfo() == null) {
+            throw new XMLSignatureException("cannot find validation key");
+        }
+        try {
+            KeySelectorResult result = dvc.getKeySelector().select(signature.getKeyInfo(), KeySelector.Purpose.VERIFY,
+                    signature.getSignedInfo().getSignatureMethod(), dvc);
+            dvc.setKeySelector(KeySelector.singletonKeySelector(result.getKey()));
+        } catch (KeySelectorException e) {
+            throw new XMLSignatureException("cannot find validation key", e);
+        }
+    }
+
+    /**
+     * Holds a verified document together with the certificate of its signer.
+     */
+    private static final class Verification {
+
+        private final Document document;
+
+        private final X509Certificate signer;
+
+        private Verification(Document document, X509Certificate signer) {
+            this.document = document;
+            this.signer = signer;
+        }
+    }
+
+    /**
+     * Collects the dependencies of a XmlVerifier instance.
+     */
+    public static final class Builder {
+
+        private final X509KeySelector keySelector;
+
+        private XmlParser parser = PooledXmlParser.getDefault();
+
+        private Metrics metrics = NoOpMetrics.INSTANCE;
+
+        private VerificationPolicy policy = VerificationPolicy.COMPLETE;
+
+        private ReferenceResolver resolver;
+
+        private ExecutorService digestExecutor;
+
+        private DigestCache digestCache;
+
+        private VerificationResultCache resultCache;
+
+        private Builder(X509KeySelector keySelector) {
+            this.keySelector = keySelector;
+        }
+
+        /**
+         * @param parser The parser used to load the documents to verify.
+         * @return This builder.
+         */
+        public Builder parser(XmlParser parser) {
+            this.parser = parser;
+            return this;
+        }
+
+        /**
+         * @param metrics The metrics receiving the timings of all verifications.
+         * @return This builder.
+         */
+        public Builder metrics(Metrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * @param policy The policy defining the order of the checks.
+         * @return This builder.
+         */
+        public Builder policy(VerificationPolicy policy) {
+            this.policy = policy;
+            return this;
+        }
+
+        /**
+         * @param resolver The resolver opening the resources of references outside of the verified document.
+         * @return This builder.
+         */
+        public Builder resolver(ReferenceResolver resolver) {
+            this.resolver = resolver;
+            return this;
+        }
+
+        /**
+         * @param digestExecutor The executor digesting external references in parallel, or null to digest them on
+         *                       the verifying thread.
+         * @return This builder.
+         */
+        public Builder digestExecutor(ExecutorService digestExecutor) {
+            this.digestExecutor = digestExecutor;
+            return this;
+        }
+
+        /**
+         * Elements referenced by ID are looked up in the given digest cache, so that elements which have been signed
+         * or verified before are not canonicalized and digested again.
+         *
+         * @param digestCache The cache of the digest values of elements referenced by ID, or null.
+         * @return This builder.
+         */
+        public Builder digestCache(DigestCache digestCache) {
+            this.digestCache = digestCache;
+            return this;
+        }
+
+        /**
+         * The outcomes of {@link XmlVerifier#verifyCached(InputStream)} are stored in the given result cache, so
+         * that exact replays of a document are neither parsed nor verified again.
+         *
+         * @param resultCache The cache of the verification results of complete documents, or null.
+         * @return This builder.
+         */
+        public Builder resultCache(VerificationResultCache resultCache) {
+            this.resultCache = resultCache;
+            return this;
+        }
+
+        /**
+         * @return The XmlVerifier instance.
+         */
+        public XmlVerifier build() {
+            return new XmlVerifier(this);
+        }
+    }
+
 }
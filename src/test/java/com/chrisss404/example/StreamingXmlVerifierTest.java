@@ -0,0 +1,160 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+
+package com.chrisss404.example;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+
+public class StreamingXmlVerifierTest extends TestCase {
+
+    private static KeyStore.PrivateKeyEntry privateKey;
+
+    private static StreamingXmlVerifier xmlVerifier;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        final String secret = "abc123";
+        KeyStore ks = TestUtility.loadKeyStore("certs/keystore.jks", secret);
+
+        privateKey = TestUtility.loadPrivateKeyFromKeyStore(ks, "demo", secret);
+        xmlVerifier = new StreamingXmlVerifier(ks);
+    }
+
+    public void testVerifyingNullAsXmlInputThrowsException() throws Exception {
+        try {
+            xmlVerifier.verify(null);
+            fail("InputStream that is null should cause exception");
+        } catch (IllegalArgumentException iae) {
+            assertEquals("Invalid exception message", "InputStream cannot be null", iae.getMessage());
+        }
+    }
+
+    public void testVerifyingUnsupportedInputRepresentationThrowsException() throws Exception {
+        try {
+            xmlVerifier.verify(new ByteArrayInputStream("Not a XML document".getBytes(StandardCharsets.UTF_8)));
+            fail("InputStream with invalid XML should cause exception");
+        } catch (XmlVerificationException xve) {
+            assertEquals("Invalid exception message", "Signature verification failed: Invalid XML input", xve.getMessage());
+        }
+    }
+
+    public void testVerifyingManipulatedXmlThrowsException() throws Exception {
+        try {
+            xmlVerifier.verify(getClass().getClassLoader().getResourceAsStream("manipulated.xml"));
+            fail("Manipulated XML should cause verification exception");
+        } catch (XmlVerificationException xve) {
+            assertEquals("Invalid exception message", "Signature validation status: true", xve.getMessage());
+        }
+    }
+
+    public void testVerifyingXmlWithValidDigestAndInvalidSignatureThrowsException() throws Exception {
+        try {
+            xmlVerifier.verify(getClass().getClassLoader().getResourceAsStream("valid-digest-but-invalid-signature.xml"));
+            fail("Manipulated XML should cause verification exception");
+        } catch (XmlVerificationException xve) {
+            assertEquals("Invalid exception message", "Signature validation status: false\n" +
+                    " - ref[0] validity status: true", xve.getMessage());
+        }
+    }
+
+    public void testVerifyingNotSignedXmlThrowsException() throws Exception {
+        try {
+            xmlVerifier.verify(getClass().getClassLoader().getResourceAsStream("not-signed.xml"));
+            fail("Not signed XML should cause verification exception");
+        } catch (XmlVerificationException xve) {
+            assertEquals("Invalid exception message", "Cannot find Signature element", xve.getMessage());
+        }
+    }
+
+    public void testVerifyingXmlSignedWithUnverifiableCertificateThrowsException() throws Exception {
+        try {
+            xmlVerifier.verify(getClass().getClassLoader().getResourceAsStream("signed-with-unverifiable-certificate.xml"));
+            fail("Unverifiable certificate should cause verification exception");
+        } catch (XmlVerificationException xve) {
+            assertEquals("Invalid exception message", "Signature verification failed: cannot find validation key", xve.getMessage());
+        }
+    }
+
+    public void testVerifyingValidXmlSucceeds() throws Exception {
+        xmlVerifier.verify(getClass().getClassLoader().getResourceAsStream("valid.xml"));
+    }
+
+    public void testVerifyingXmlWithNamespacesAndSpecialCharactersSucceeds() throws Exception {
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<?style sheet?>\n<!-- before -->\n" +
+                "<doc xmlns=\"urn:default\" xmlns:a=\"urn:a\" xml:lang=\"en\" z=\"1\" a:b=\"2\" b=\"&quot;&#9;&#10;\">\n" +
+                "  <a:item a:id=\"x\" xmlns:a=\"urn:a\" xmlns:c=\"urn:c\">Tom &amp; Jerry &lt;3 &gt; <![CDATA[<raw>]]>&#13;</a:item>\n" +
+                "  <!-- inside --><inner xmlns=\"\"><deeper xmlns=\"\"/>\u00e4\u20ac\ud83d\ude00</inner><?pi data?>\n" +
+                "</doc>\n<!-- after -->";
+
+        xmlVerifier.verify(sign(xml));
+    }
+
+    public void testVerifyingXmlWithPrefixedRootSucceeds() throws Exception {
+        String xml = "<p:doc xmlns:p=\"urn:p\" xmlns:ds=\"http://www.w3.org/2000/09/xmldsig#\"><p:a>1</p:a></p:doc>";
+
+        xmlVerifier.verify(sign(xml));
+    }
+
+    public void testVerifyingManipulatedSignedXmlThrowsException() throws Exception {
+        String xml = "<doc xmlns=\"urn:default\"><amount>5</amount></doc>";
+        String signed = new String(TestUtility.readFully(sign(xml)), StandardCharsets.UTF_8);
+
+        try {
+            xmlVerifier.verify(new ByteArrayInputStream(signed.replace(">5<", ">500<").getBytes(StandardCharsets.UTF_8)));
+            fail("Manipulated XML should cause verification exception");
+        } catch (XmlVerificationException xve) {
+            assertEquals("Invalid exception message", "Signature validation status: true", xve.getMessage());
+        }
+    }
+
+    public void testVerifyingValidXmlFromBufferAndFileSucceeds() throws Exception {
+        byte[] xml = TestUtility.readFully(getClass().getClassLoader().getResourceAsStream("valid.xml"));
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(xml.length);
+        direct.put(xml).flip();
+        xmlVerifier.verifyBuffer(direct);
+        assertEquals("Buffer position must not change", 0, direct.position());
+
+        byte[] padded = new byte[xml.length + 2];
+        System.arraycopy(xml, 0, padded, 1, xml.length);
+        xmlVerifier.verify(padded, 1, xml.length);
+
+        Path file = Files.createTempFile("valid", ".xml");
+        try {
+            Files.write(file, xml);
+            xmlVerifier.verifyFile(file);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static InputStream sign(String xml) throws Exception {
+        XmlSigner xmlSigner = new XmlSigner();
+        return TestUtility.getInputStreamFromDocument(
+                xmlSigner.sign(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), privateKey));
+    }
+
+}
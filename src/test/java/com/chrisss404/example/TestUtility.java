@@ -69,4 +69,13 @@ public class TestUtility {
 
         return is;
     }
+
+    public static byte[] readFully(InputStream is) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        for (int n; (n = is.read(buffer)) != -1; ) {
+            baos.write(buffer, 0, n);
+        }
+        return baos.toByteArray();
+    }
 }
@@ -20,8 +20,21 @@ import junit.framework.TestCase;
 import org.w3c.dom.Document;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class XmlSignerTest extends TestCase {
 
@@ -31,6 +44,8 @@ public class XmlSignerTest extends TestCase {
 
     private static XmlVerifier xmlVerifier;
 
+    private static StreamingXmlVerifier streamingXmlVerifier;
+
     @Override
     protected void setUp() throws Exception {
         super.setUp();
@@ -41,6 +56,7 @@ public class XmlSignerTest extends TestCase {
         privateKey = TestUtility.loadPrivateKeyFromKeyStore(ks, "demo", secret);
         xmlSigner = new XmlSigner();
         xmlVerifier = new XmlVerifier(ks);
+        streamingXmlVerifier = new StreamingXmlVerifier(ks);
     }
 
     public void testSignInvalidXmlThrowsException() throws Exception {
@@ -63,4 +79,295 @@ public class XmlSignerTest extends TestCase {
         assertNotNull("XML signature is invalid", verifiedDocument);
     }
 
-}
\ No newline at end of file
+    public void testStreamingSignInvalidXmlThrowsException() throws Exception {
+        InputStream xmlInputStream = new ByteArrayInputStream("Not a XML document".getBytes());
+
+        try {
+            xmlSigner.sign(xmlInputStream, new ByteArrayOutputStream(), privateKey);
+            fail("InputStream with invalid XML should cause exception");
+        } catch (XmlSignatureException xve) {
+            assertEquals("Invalid exception message", "Failed signing XML", xve.getMessage());
+        }
+    }
+
+    public void testStreamingSignXmlSucceeds() throws Exception {
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><?style sheet?><doc xmlns=\"urn:default\" xmlns:a=\"urn:a\">" +
+                "<a:content a:currency=\"USD\">I owe you 5 dollars &amp; 5 cents.</a:content></doc><?after root?>";
+        ByteArrayOutputStream signedXml = new ByteArrayOutputStream();
+
+        xmlSigner.sign(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), signedXml, privateKey);
+
+        String signed = new String(signedXml.toByteArray(), StandardCharsets.UTF_8);
+        assertTrue("Signature is not enveloped", signed.contains("</Signature></doc>\n<?after root?>"));
+        assertNotNull("XML signature is invalid", xmlVerifier.verify(new ByteArrayInputStream(signedXml.toByteArray())));
+        streamingXmlVerifier.verify(new ByteArrayInputStream(signedXml.toByteArray()));
+    }
+
+    public void testSignAndSerializeXmlSucceeds() throws Exception {
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><doc xmlns:a=\"urn:a\"><!-- note -->" +
+                "<a:content a:currency=\"&#x20AC;\">I owe you 5 &lt; 6 dollars.</a:content></doc>";
+        ByteArrayOutputStream signedXml = new ByteArrayOutputStream();
+
+        xmlSigner.signAndSerialize(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)),
+                Channels.newChannel(signedXml), privateKey);
+
+        String signed = new String(signedXml.toByteArray(), StandardCharsets.UTF_8);
+        assertTrue("Comment is not kept", signed.contains("<!-- note -->"));
+        assertNotNull("XML signature is invalid", xmlVerifier.verify(new ByteArrayInputStream(signedXml.toByteArray())));
+        streamingXmlVerifier.verify(new ByteArrayInputStream(signedXml.toByteArray()));
+    }
+
+    public void testSignXmlWithExclusiveCanonicalizationSucceeds() throws Exception {
+        String xml = "<p:doc xmlns:p=\"urn:p\" xmlns:unused=\"urn:unused\" xmlns:a=\"urn:a\"><!-- note -->" +
+                "<a:content a:currency=\"USD\">I owe you 5 dollars.</a:content></p:doc>";
+        XmlSigner signer = XmlSigner.builder().signatureMethod(SignatureMethod.RSA_SHA256)
+                .profile(SigningProfile.EXCLUSIVE.withInclusivePrefixes("a")).build();
+
+        Document doc = signer.sign(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), privateKey);
+        assertNotNull("XML signature is invalid", xmlVerifier.verify(TestUtility.getInputStreamFromDocument(doc)));
+
+        ByteArrayOutputStream signedXml = new ByteArrayOutputStream();
+        signer.sign(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), signedXml, privateKey);
+        String signed = new String(signedXml.toByteArray(), StandardCharsets.UTF_8);
+        assertTrue("Unused namespace is rendered", signed.startsWith("<p:doc xmlns:a=\"urn:a\" xmlns:p=\"urn:p\">"));
+        assertTrue("Signature is not exclusive", signed.contains(Canonicalization.EXCLUSIVE.getUri()));
+        assertNotNull("XML signature is invalid", xmlVerifier.verify(new ByteArrayInputStream(signedXml.toByteArray())));
+    }
+
+    public void testStreamingSignPreCanonicalXmlSucceeds() throws Exception {
+        String xml = "<?style sheet?>\n<doc xmlns=\"urn:default\" xml:lang=\"en\"><a:content xmlns:a=\"urn:a\" " +
+                "a:currency=\"USD\">I owe you 5 dollars &amp; 5 cents.</a:content></doc>";
+        XmlSigner signer = XmlSigner.builder().signatureMethod(SignatureMethod.RSA_SHA256)
+                .profile(SigningProfile.INCLUSIVE.withPreCanonicalInput()).build();
+
+        ByteArrayOutputStream canonicalized = new ByteArrayOutputStream();
+        xmlSigner.sign(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), canonicalized, privateKey);
+        ByteArrayOutputStream signedXml = new ByteArrayOutputStream();
+        signer.sign(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), signedXml, privateKey);
+
+        assertTrue("Copied document differs", Arrays.equals(canonicalized.toByteArray(), signedXml.toByteArray()));
+        assertNotNull("XML signature is invalid", xmlVerifier.verify(new ByteArrayInputStream(signedXml.toByteArray())));
+        streamingXmlVerifier.verify(new ByteArrayInputStream(signedXml.toByteArray()));
+
+        try {
+            signer.sign(new ByteArrayInputStream((xml + "\n").getBytes(StandardCharsets.UTF_8)),
+                    new ByteArrayOutputStream(), privateKey);
+            fail("Trailing content should cause exception");
+        } catch (XmlSignatureException xse) {
+            assertEquals("Invalid exception message", "Failed signing XML", xse.getMessage());
+        }
+    }
+
+    public void testSignXmlWithEllipticCurveKeysSucceeds() throws Exception {
+        KeyStore ks = TestUtility.loadKeyStore("certs/keystore-ec.p12", "abc123");
+        XmlVerifier verifier = new XmlVerifier(ks);
+        Map<String, SignatureMethod> methods = new HashMap<>();
+        methods.put("ec256", SignatureMethod.ECDSA_SHA256);
+        methods.put("ec384", SignatureMethod.ECDSA_SHA384);
+        if (isSupported(SignatureMethod.ED25519)) {
+            methods.put("ed25519", SignatureMethod.ED25519);
+        }
+
+        for (Map.Entry<String, SignatureMethod> method : methods.entrySet()) {
+            KeyStore.PrivateKeyEntry key = TestUtility.loadPrivateKeyFromKeyStore(ks, method.getKey(), "abc123");
+            Document doc = xmlSigner.sign(new ByteArrayInputStream("<document><content>I owe you 5 dollars.</content></document>".getBytes()), key);
+
+            String signed = new String(TestUtility.readFully(TestUtility.getInputStreamFromDocument(doc)), StandardCharsets.UTF_8);
+            assertTrue("Invalid signature method", signed.contains("Algorithm=\"" + method.getValue().getUri() + "\""));
+            assertNotNull("XML signature is invalid", verifier.verify(new ByteArrayInputStream(signed.getBytes(StandardCharsets.UTF_8))));
+        }
+    }
+
+    private static boolean isSupported(SignatureMethod method) {
+        try {
+            XmlSignatureFactories.get().newSignatureMethod(method.getUri(), null);
+            return true;
+        } catch (GeneralSecurityException e) {
+            return false;
+        }
+    }
+
+    public void testSignWithExternalReferencesSucceeds() throws Exception {
+        final Map<String, byte[]> attachments = new HashMap<>();
+        attachments.put("invoice.pdf", "%PDF invoice".getBytes(StandardCharsets.UTF_8));
+        attachments.put("terms.txt", "Terms and conditions".getBytes(StandardCharsets.UTF_8));
+        ReferenceResolver resolver = new ReferenceResolver() {
+            @Override
+            public InputStream resolve(String uri) {
+                byte[] attachment = attachments.get(uri);
+                return attachment == null ? null : new ByteArrayInputStream(attachment);
+            }
+        };
+        String xml = "<manifest><item Id=\"first\">invoice.pdf</item><item Id=\"second\">terms.txt</item></manifest>";
+        KeyStore ks = TestUtility.loadKeyStore("certs/keystore.jks", "abc123");
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            XmlSigner signer = XmlSigner.builder().signatureMethod(SignatureMethod.RSA_SHA256)
+                    .resolver(resolver).digestExecutor(executor).build();
+            XmlVerifier verifier = XmlVerifier.builder(new X509KeySelector(ks))
+                    .resolver(resolver).digestExecutor(executor).build();
+
+            Document enveloped = signer.sign(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)),
+                    Arrays.asList("#second", "invoice.pdf", "terms.txt"), privateKey);
+            Document detached = signer.signDetached(Arrays.asList("invoice.pdf", "terms.txt"), privateKey);
+            assertNotNull("XML signature is invalid", verifier.verify(TestUtility.getInputStreamFromDocument(enveloped)));
+            assertNotNull("XML signature is invalid", verifier.verify(TestUtility.getInputStreamFromDocument(detached)));
+
+            attachments.put("terms.txt", "Other terms".getBytes(StandardCharsets.UTF_8));
+            try {
+                verifier.verify(TestUtility.getInputStreamFromDocument(detached));
+                fail("Modified attachment should cause exception");
+            } catch (XmlVerificationException xve) {
+                assertEquals("Invalid exception message", "Signature validation status: true",
+                        xve.getMessage());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testSignElementsReusesCachedDigests() throws Exception {
+        String catalog = "<catalog xmlns=\"urn:catalog\" xml:lang=\"en\"><item Id=\"a\">Apple</item>" +
+                "<item Id=\"b\">Banana</item><item Id=\"c\">Cherry</item></catalog>";
+        DigestCache signerCache = new DigestCache(16);
+        DigestCache verifierCache = new DigestCache(16);
+        XmlSigner signer = XmlSigner.builder().signatureMethod(SignatureMethod.RSA_SHA256).digestCache(signerCache).build();
+        XmlVerifier verifier = XmlVerifier.builder(new X509KeySelector(TestUtility.loadKeyStore("certs/keystore.jks", "abc123")))
+                .digestCache(verifierCache).build();
+
+        signer.signElements(new ByteArrayInputStream(catalog.getBytes(StandardCharsets.UTF_8)), "item", privateKey);
+        Document doc = signer.signElements(new ByteArrayInputStream(catalog.replace("Banana", "Blueberry")
+                .getBytes(StandardCharsets.UTF_8)), "item", privateKey);
+        assertEquals("Invalid number of cached digests", 4, signerCache.size());
+
+        byte[] signed = TestUtility.readFully(TestUtility.getInputStreamFromDocument(doc));
+        assertNotNull("XML signature is invalid", xmlVerifier.verify(new ByteArrayInputStream(signed)));
+        assertNotNull("XML signature is invalid", verifier.verify(new ByteArrayInputStream(signed)));
+        assertNotNull("XML signature is invalid", verifier.verify(new ByteArrayInputStream(signed)));
+        assertEquals("Invalid number of cached digests", 3, verifierCache.size());
+
+        try {
+            verifier.verify(new ByteArrayInputStream(new String(signed, StandardCharsets.UTF_8)
+                    .replace("Cherry", "Coconut").getBytes(StandardCharsets.UTF_8)));
+            fail("Modified element should cause exception");
+        } catch (XmlVerificationException xve) {
+            assertEquals("Invalid exception message", "Signature validation status: true", xve.getMessage());
+        }
+    }
+
+    public void testSignElementsWithTooManyReferencesThrowsException() throws Exception {
+        StringBuilder catalog = new StringBuilder("<catalog>");
+        for (int i = 0; i < 31; i++) {
+            catalog.append("<item Id=\"item-").append(i).append("\">").append(i).append("</item>");
+        }
+        catalog.append("</catalog>");
+
+        try {
+            xmlSigner.signElements(new ByteArrayInputStream(catalog.toString().getBytes(StandardCharsets.UTF_8)), "item", privateKey);
+            fail("More than 30 references should cause exception");
+        } catch (XmlSignatureException xse) {
+            assertEquals("Invalid exception message", "A signature cannot have more than 30 references, got 31", xse.getMessage());
+        }
+    }
+
+    public void testVerifyingDuplicatedIdWithWarmDigestCacheThrowsException() throws Exception {
+        String catalog = "<catalog xmlns=\"urn:catalog\"><item Id=\"a\">Apple</item><item Id=\"b\">Banana</item></catalog>";
+        DigestCache verifierCache = new DigestCache(16);
+        XmlVerifier verifier = XmlVerifier.builder(new X509KeySelector(TestUtility.loadKeyStore("certs/keystore.jks", "abc123")))
+                .digestCache(verifierCache).build();
+
+        Document doc = xmlSigner.signElements(new ByteArrayInputStream(catalog.getBytes(StandardCharsets.UTF_8)), "item", privateKey);
+        String signed = new String(TestUtility.readFully(TestUtility.getInputStreamFromDocument(doc)), StandardCharsets.UTF_8);
+        assertNotNull("XML signature is invalid", verifier.verify(new ByteArrayInputStream(signed.getBytes(StandardCharsets.UTF_8))));
+        assertEquals("Invalid number of cached digests", 2, verifierCache.size());
+
+        for (String wrapped : Arrays.asList(signed.replace("<item Id=\"a\">", "<item Id=\"a\">Apricot</item><item Id=\"a\">"),
+                signed.replace("<item Id=\"b\">", "<item Id=\"a\">Apricot</item><item Id=\"b\">"))) {
+            try {
+                verifier.verify(new ByteArrayInputStream(wrapped.getBytes(StandardCharsets.UTF_8)));
+                fail("Duplicated ID should cause exception");
+            } catch (XmlVerificationException xve) {
+                assertEquals("Invalid exception message", "Duplicate ID a", xve.getMessage());
+            }
+        }
+    }
+
+    public void testSignByAliasUnlocksKeyOnce() throws Exception {
+        String xml = "<doc><content>I owe you 5 dollars.</content></doc>";
+        SigningCredentials credentials = new SigningCredentials(TestUtility.loadKeyStore("certs/keystore.jks", "abc123"),
+                "abc123".toCharArray());
+        XmlSigner signer = XmlSigner.builder().credentials(credentials).build();
+
+        Document doc = signer.sign(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), "demo");
+        assertNotNull("XML signature is invalid", xmlVerifier.verify(TestUtility.getInputStreamFromDocument(doc)));
+        KeyStore.PrivateKeyEntry entry = credentials.getPrivateKeyEntry("demo");
+        signer.sign(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), "demo");
+        assertSame("Signing key is unlocked again", entry, credentials.getPrivateKeyEntry("demo"));
+        assertEquals("Invalid number of signing keys", 1, credentials.size());
+
+        credentials.evict("demo");
+        assertEquals("Invalid number of signing keys", 0, credentials.size());
+        assertNotSame("Evicted signing key is still used", entry, credentials.getPrivateKeyEntry("demo"));
+
+        try {
+            signer.sign(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), "unknown");
+            fail("Unknown alias should cause exception");
+        } catch (XmlSignatureException xse) {
+            assertEquals("Invalid exception message", "No signing key with alias unknown", xse.getMessage());
+        }
+
+        credentials.close();
+        try {
+            signer.sign(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), "demo");
+            fail("Closed credentials should cause exception");
+        } catch (IllegalStateException ise) {
+            assertEquals("Invalid exception message", "Signing credentials have been closed", ise.getMessage());
+        }
+    }
+
+    public void testConcurrentFirstUsesUnlockSigningKeyOnce() throws Exception {
+        final SigningCredentials credentials = new SigningCredentials(
+                TestUtility.loadKeyStore("certs/keystore.jks", "abc123"), "abc123".toCharArray());
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<KeyStore.PrivateKeyEntry>> entries = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                entries.add(executor.submit(new Callable<KeyStore.PrivateKeyEntry>() {
+                    @Override
+                    public KeyStore.PrivateKeyEntry call() {
+                        return credentials.getPrivateKeyEntry("demo");
+                    }
+                }));
+            }
+            for (Future<KeyStore.PrivateKeyEntry> entry : entries) {
+                assertSame("Signing key is unlocked again", entries.get(0).get(), entry.get());
+            }
+            assertEquals("Invalid number of signing keys", 1, credentials.size());
+        } finally {
+            executor.shutdown();
+            credentials.close();
+        }
+    }
+
+    public void testSessionSignsAllDocuments() throws Exception {
+        List<InputStream> documents = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            documents.add(new ByteArrayInputStream(("<document><content>I owe you " + i + " dollars.</content></document>").getBytes()));
+        }
+        final List<Document> signedDocuments = new ArrayList<>();
+
+        BatchStatistics statistics = xmlSigner.openSession(privateKey).signAll(documents, new SigningSession.SignedDocumentHandler() {
+            @Override
+            public void handle(Document signedDocument) {
+                signedDocuments.add(signedDocument);
+            }
+        });
+
+        assertEquals("Invalid document count", 3, statistics.getDocumentCount());
+        assertEquals("Invalid number of signed documents", 3, signedDocuments.size());
+        for (Document doc : signedDocuments) {
+            assertNotNull("XML signature is invalid", xmlVerifier.verify(TestUtility.getInputStreamFromDocument(doc)));
+        }
+    }
+
+}
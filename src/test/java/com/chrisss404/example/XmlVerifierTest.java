@@ -17,10 +17,30 @@
 package com.chrisss404.example;
 
 import junit.framework.TestCase;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import javax.xml.crypto.dsig.XMLSignature;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class XmlVerifierTest extends TestCase {
 
@@ -59,6 +79,17 @@ public class XmlVerifierTest extends TestCase {
         }
     }
 
+    public void testVerifyingXmlWithExternalEntityThrowsException() throws Exception {
+        String xml = "<?xml version=\"1.0\"?><!DOCTYPE document [<!ENTITY xxe SYSTEM \"file:///etc/passwd\">]>" +
+                "<document>&xxe;</document>";
+        try {
+            xmlVerifier.verify(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+            fail("InputStream with document type declaration should cause exception");
+        } catch (XmlVerificationException xve) {
+            assertEquals("Invalid exception message", "Signature verification failed: Invalid XML input", xve.getMessage());
+        }
+    }
+
     public void testVerifyingManipulatedXmlThrowsException() throws Exception {
         try {
             InputStream xmlInputStream = getClass().getClassLoader().getResourceAsStream("manipulated.xml");
@@ -125,4 +156,347 @@ public class XmlVerifierTest extends TestCase {
         assertNotNull("XML signature is invalid", xmlVerifier.verify(xmlInputStream));
     }
 
+    public void testVerifyingUnverifiableCertificateTwiceThrowsCachedException() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            try {
+                InputStream xmlInputStream = getClass().getClassLoader().getResourceAsStream("signed-with-unverifiable-certificate.xml");
+                xmlVerifier.verify(xmlInputStream);
+                fail("Unverifiable certificate should cause verification exception");
+            } catch (XmlVerificationException xve) {
+                assertEquals("Invalid exception message", "Signature verification failed: cannot find validation key", xve.getMessage());
+            }
+        }
+    }
+
+    public void testVerifyingValidXmlAfterRefreshSucceeds() throws Exception {
+        assertNotNull("XML signature is invalid", xmlVerifier.verify(getClass().getClassLoader().getResourceAsStream("valid.xml")));
+        xmlVerifier.refresh();
+        assertNotNull("XML signature is invalid", xmlVerifier.verify(getClass().getClassLoader().getResourceAsStream("valid.xml")));
+    }
+
+    public void testVerifyingReplayedDocumentsHitsResultCache() throws Exception {
+        VerificationResultCache cache = new VerificationResultCache(16, 1, TimeUnit.MINUTES);
+        XmlVerifier verifier = XmlVerifier.builder(new X509KeySelector(TestUtility.loadKeyStore("certs/keystore.jks", "abc123")))
+                .resultCache(cache).build();
+
+        for (int i = 0; i < 2; i++) {
+            VerificationResult valid = verifier.verifyCached(getClass().getClassLoader().getResourceAsStream("valid.xml"));
+            assertEquals("Invalid status", VerificationResult.Status.VALID, valid.getStatus());
+            assertNull("Cached result must not hold a document", valid.getDocument());
+
+            VerificationResult invalid = verifier.verifyCached(getClass().getClassLoader().getResourceAsStream("manipulated.xml"));
+            assertEquals("Invalid status", VerificationResult.Status.INVALID, invalid.getStatus());
+            assertEquals("Invalid reason", "Signature validation status: true", invalid.getReason());
+        }
+        assertEquals("Invalid number of misses", 2, cache.getMissCount());
+        assertEquals("Invalid number of hits", 2, cache.getHitCount());
+
+        verifier.refresh();
+        assertEquals("Refresh should discard cached results", 0, cache.size());
+        assertEquals("Invalid status", VerificationResult.Status.VALID,
+                verifier.verifyCached(getClass().getClassLoader().getResourceAsStream("valid.xml")).getStatus());
+        assertEquals("Invalid number of misses", 3, cache.getMissCount());
+    }
+
+    public void testVerifyingUnreadableDocumentIsNeitherInvalidNorCached() throws Exception {
+        VerificationResultCache cache = new VerificationResultCache(16, 1, TimeUnit.MINUTES);
+        XmlVerifier verifier = XmlVerifier.builder(new X509KeySelector(TestUtility.loadKeyStore("certs/keystore.jks", "abc123")))
+                .resultCache(cache).build();
+        InputStream unreadable = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Connection reset");
+            }
+        };
+
+        assertEquals("Invalid status", VerificationResult.Status.ERROR, verifier.verifyCached(unreadable).getStatus());
+        assertEquals("Invalid status", VerificationResult.Status.ERROR, xmlVerifier.verifyCached(unreadable).getStatus());
+        assertEquals("Errors must not be cached", 0, cache.size());
+    }
+
+    public void testVerifyingAllReportsResultPerDocument() throws Exception {
+        List<InputStream> documents = Arrays.asList(
+                getClass().getClassLoader().getResourceAsStream("valid.xml"),
+                getClass().getClassLoader().getResourceAsStream("manipulated.xml"),
+                null,
+                getClass().getClassLoader().getResourceAsStream("valid.xml"));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<VerificationResult> results = xmlVerifier.verifyAll(documents, executor, 2);
+
+            assertEquals("Invalid number of results", 4, results.size());
+            assertEquals("Invalid status", VerificationResult.Status.VALID, results.get(0).getStatus());
+            assertNotNull("Verified document is missing", results.get(0).getDocument());
+            assertEquals("Invalid status", VerificationResult.Status.INVALID, results.get(1).getStatus());
+            assertEquals("Invalid reason", "Signature validation status: true", results.get(1).getReason());
+            assertEquals("Invalid status", VerificationResult.Status.ERROR, results.get(2).getStatus());
+            assertEquals("Invalid status", VerificationResult.Status.VALID, results.get(3).getStatus());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testAsyncVerifierCompletesChunkedDocuments() throws Exception {
+        byte[] valid = TestUtility.readFully(getClass().getClassLoader().getResourceAsStream("valid.xml"));
+        AsyncXmlVerifier verifier = new AsyncXmlVerifier(xmlVerifier, 1, 1);
+        try {
+            final AtomicReference<VerificationResult> completed = new AtomicReference<>();
+            final CountDownLatch done = new CountDownLatch(1);
+            AsyncXmlVerifier.ChunkedVerification verification = verifier.begin(false, new AsyncXmlVerifier.Callback() {
+                @Override
+                public void completed(VerificationResult result) {
+                    completed.set(result);
+                    done.countDown();
+                }
+            });
+            for (int offset = 0; offset < valid.length; offset += 100) {
+                verification.append(ByteBuffer.wrap(valid, offset, Math.min(100, valid.length - offset)));
+            }
+            VerificationResult result = verification.complete().get();
+
+            assertTrue("Callback has not been invoked", done.await(10, TimeUnit.SECONDS));
+            assertSame("Invalid callback result", result, completed.get());
+            assertEquals("Invalid status", VerificationResult.Status.VALID, result.getStatus());
+            assertNull("Document is retained", result.getDocument());
+            assertNotNull("Document is not retained",
+                    verifier.verify(new ByteArrayInputStream(valid), true, null).get().getDocument());
+        } finally {
+            verifier.shutdown();
+        }
+    }
+
+    public void testAsyncVerifierRejectsDocumentsWhenSaturated() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        InputStream blocking = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return -1;
+            }
+        };
+        AsyncXmlVerifier verifier = new AsyncXmlVerifier(xmlVerifier, 1, 1);
+        try {
+            Future<VerificationResult> running = verifier.verify(blocking);
+            while (verifier.getActiveCount() == 0) {
+                Thread.sleep(1);
+            }
+            Future<VerificationResult> queued = verifier.verify(getClass().getClassLoader().getResourceAsStream("valid.xml"));
+            assertEquals("Invalid queue depth", 1, verifier.getQueueDepth());
+            assertTrue("Verifier is not saturated", verifier.isSaturated());
+
+            Future<VerificationResult> rejected = verifier.verify(getClass().getClassLoader().getResourceAsStream("valid.xml"));
+            assertTrue("Rejected verification is not done", rejected.isDone());
+            assertEquals("Invalid status", VerificationResult.Status.ERROR, rejected.get().getStatus());
+            assertEquals("Invalid rejected count", 1, verifier.getRejectedCount());
+
+            release.countDown();
+            assertEquals("Invalid status", VerificationResult.Status.INVALID, running.get().getStatus());
+            assertEquals("Invalid status", VerificationResult.Status.VALID, queued.get().getStatus());
+        } finally {
+            release.countDown();
+            verifier.shutdown();
+        }
+    }
+
+    public void testVerifyingRecordsMetrics() throws Exception {
+        HistogramMetrics metrics = new HistogramMetrics();
+        XmlVerifier verifier = XmlVerifier.builder(new X509KeySelector(TestUtility.loadKeyStore("certs/keystore.jks", "abc123")))
+                .metrics(metrics).build();
+
+        verifier.verify(getClass().getClassLoader().getResourceAsStream("valid.xml"));
+        try {
+            verifier.verify(getClass().getClassLoader().getResourceAsStream("manipulated.xml"));
+            fail("Manipulated XML should cause verification exception");
+        } catch (XmlVerificationException xve) {
+            assertEquals("Invalid exception message", "Signature validation status: true", xve.getMessage());
+        }
+
+        Map<String, HistogramMetrics.HistogramSnapshot> histograms = metrics.snapshot().getHistograms();
+        for (String phase : Arrays.asList("parse", "unmarshal", "key_selection", "signature", "digest")) {
+            assertEquals("Invalid count of phase " + phase, 2, histograms.get("verify.phase." + phase).getCount());
+        }
+        assertTrue("Document size is missing", histograms.get("verify.size").getSum() > 0);
+        assertEquals("Invalid count of valid documents", 1, histograms.get("verify.rsa_sha256.success").getCount());
+        assertEquals("Invalid count of invalid documents", 1, histograms.get("verify.rsa_sha256.invalid").getCount());
+    }
+
+    public void testFailFastVerificationSkipsReferencesOfInvalidSignature() throws Exception {
+        XmlVerifier verifier = newVerifier(VerificationPolicy.FAIL_FAST);
+
+        assertNotNull("XML signature is invalid", verifier.verify(getClass().getClassLoader().getResourceAsStream("valid.xml")));
+        try {
+            verifier.verify(getClass().getClassLoader().getResourceAsStream("valid-digest-but-invalid-signature.xml"));
+            fail("Manipulated XML should cause verification exception");
+        } catch (XmlVerificationException xve) {
+            assertEquals("Invalid exception message", "Signature validation status: false", xve.getMessage());
+        }
+        try {
+            verifier.verify(getClass().getClassLoader().getResourceAsStream("signed-with-unverifiable-certificate.xml"));
+            fail("Unverifiable certificate should cause verification exception");
+        } catch (XmlVerificationException xve) {
+            assertEquals("Invalid exception message", "Signature verification failed: cannot find validation key", xve.getMessage());
+        }
+    }
+
+    public void testVerifyingXmlWithDisallowedSignatureMethodThrowsException() throws Exception {
+        XmlVerifier verifier = newVerifier(new VerificationPolicy(VerificationPolicy.FAIL_FAST.getOrder(), false,
+                EnumSet.of(SignatureMethod.RSA_SHA512), EnumSet.allOf(DigestAlgorithm.class)));
+        try {
+            verifier.verify(getClass().getClassLoader().getResourceAsStream("valid.xml"));
+            fail("Disallowed signature method should cause verification exception");
+        } catch (XmlVerificationException xve) {
+            assertEquals("Invalid exception message", "Signature method http://www.w3.org/2001/04/xmldsig-more#rsa-sha256 is not allowed", xve.getMessage());
+        }
+    }
+
+    public void testVerifyingXmlWithDeniedSignatureMethodThrowsException() throws Exception {
+        XmlVerifier verifier = newVerifier(VerificationPolicy.FAIL_FAST.withoutDigestAlgorithms(DigestAlgorithm.SHA1)
+                .withoutSignatureMethods(SignatureMethod.RSA_SHA1, SignatureMethod.RSA_SHA256));
+        try {
+            verifier.verify(getClass().getClassLoader().getResourceAsStream("valid.xml"));
+            fail("Denied signature method should cause verification exception");
+        } catch (XmlVerificationException xve) {
+            assertEquals("Invalid exception message", "Signature method http://www.w3.org/2001/04/xmldsig-more#rsa-sha256 is not allowed", xve.getMessage());
+        }
+    }
+
+    private static XmlVerifier newVerifier(VerificationPolicy policy) throws Exception {
+        return XmlVerifier.builder(new X509KeySelector(TestUtility.loadKeyStore("certs/keystore.jks", "abc123")))
+                .policy(policy).build();
+    }
+
+    public void testVerifyingXmlReferencingTrustedCertificateSucceeds() throws Exception {
+        KeyStore ks = TestUtility.loadKeyStore("certs/keystore.jks", "abc123");
+        KeyStore.PrivateKeyEntry privateKey = TestUtility.loadPrivateKeyFromKeyStore(ks, "demo", "abc123");
+        X509Certificate certificate = (X509Certificate) privateKey.getCertificate();
+
+        Document doc = new XmlSigner().sign(new ByteArrayInputStream("<document><content>I owe you 5 dollars.</content></document>".getBytes(StandardCharsets.UTF_8)), privateKey);
+        Element x509Data = (Element) doc.getElementsByTagNameNS(XMLSignature.XMLNS, "X509Data").item(0);
+        while (x509Data.hasChildNodes()) {
+            x509Data.removeChild(x509Data.getFirstChild());
+        }
+        Element issuerSerial = (Element) x509Data.appendChild(doc.createElementNS(XMLSignature.XMLNS, "X509IssuerSerial"));
+        issuerSerial.appendChild(doc.createElementNS(XMLSignature.XMLNS, "X509IssuerName"))
+                .setTextContent(certificate.getIssuerX500Principal().getName());
+        issuerSerial.appendChild(doc.createElementNS(XMLSignature.XMLNS, "X509SerialNumber"))
+                .setTextContent(certificate.getSerialNumber().toString());
+
+        assertNotNull("XML signature is invalid", xmlVerifier.verify(TestUtility.getInputStreamFromDocument(doc)));
+
+        Element keyName = doc.createElementNS(XMLSignature.XMLNS, "KeyName");
+        keyName.setTextContent("demo");
+        x509Data.getParentNode().replaceChild(keyName, x509Data);
+
+        assertNotNull("XML signature is invalid", xmlVerifier.verify(TestUtility.getInputStreamFromDocument(doc)));
+
+        keyName.setTextContent("unknown");
+        try {
+            xmlVerifier.verify(TestUtility.getInputStreamFromDocument(doc));
+            fail("Unknown key name should cause verification exception");
+        } catch (XmlVerificationException xve) {
+            assertEquals("Invalid exception message", "Signature verification failed: cannot find validation key", xve.getMessage());
+        }
+    }
+
+    public void testSelectiveParsingLoadsOnlySignedElements() throws Exception {
+        KeyStore ks = TestUtility.loadKeyStore("certs/keystore.jks", "abc123");
+        KeyStore.PrivateKeyEntry privateKey = TestUtility.loadPrivateKeyFromKeyStore(ks, "demo", "abc123");
+        XmlVerifier verifier = XmlVerifier.builder(new X509KeySelector(ks)).parser(new SelectiveXmlParser()).build();
+
+        String envelope = "<envelope xmlns=\"urn:envelope\" xmlns:h=\"urn:header\" xml:lang=\"en\">" +
+                "<h:header Id=\"header\"><h:to>Bob</h:to></h:header><body><item>I owe you 5 dollars.</item></body></envelope>";
+        Document signed = new XmlSigner().signElements(new ByteArrayInputStream(envelope.getBytes(StandardCharsets.UTF_8)), "header", privateKey);
+        String xml = new String(TestUtility.readFully(TestUtility.getInputStreamFromDocument(signed)), StandardCharsets.UTF_8);
+
+        Document doc = verifier.verify(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+        assertEquals("Invalid document element", "fragments", doc.getDocumentElement().getLocalName());
+        assertEquals("Unsigned body should not be loaded", 0, doc.getElementsByTagNameNS("urn:envelope", "body").getLength());
+        assertNotNull("XML signature is invalid", verifier.verify(new ByteArrayInputStream(xml.replace("5 dollars", "50 dollars").getBytes(StandardCharsets.UTF_8))));
+
+        try {
+            verifier.verify(new ByteArrayInputStream(xml.replace("Bob", "Eve").getBytes(StandardCharsets.UTF_8)));
+            fail("Modified header should cause verification exception");
+        } catch (XmlVerificationException xve) {
+            assertEquals("Invalid exception message", "Signature validation status: true", xve.getMessage());
+        }
+        try {
+            verifier.verify(new ByteArrayInputStream(xml.replace("<body>", "<body><h:header Id=\"header\"><h:to>Eve</h:to></h:header>").getBytes(StandardCharsets.UTF_8)));
+            fail("Duplicate ID should cause verification exception");
+        } catch (XmlVerificationException xve) {
+            assertEquals("Invalid exception message", "Signature verification failed: Duplicate ID header", xve.getMessage());
+        }
+
+        Document complete = verifier.verify(getClass().getClassLoader().getResourceAsStream("valid.xml"));
+        assertFalse("Document signed as a whole should be loaded completely", "fragments".equals(complete.getDocumentElement().getLocalName()));
+    }
+
+    public void testVerifyingSignaturesReportsResultPerSigner() throws Exception {
+        KeyStore ks = TestUtility.loadKeyStore("certs/keystore.jks", "abc123");
+        KeyStore.PrivateKeyEntry privateKey = TestUtility.loadPrivateKeyFromKeyStore(ks, "demo", "abc123");
+        String order = "<order><item Id=\"item\">I owe you 5 dollars.</item></order>";
+        XmlSigner signer = new XmlSigner();
+        Document signedOnce = signer.signElements(new ByteArrayInputStream(order.getBytes(StandardCharsets.UTF_8)), "item", privateKey);
+        Document signedTwice = signer.signElements(TestUtility.getInputStreamFromDocument(signedOnce), "item", privateKey);
+        byte[] countersigned = TestUtility.readFully(TestUtility.getInputStreamFromDocument(signedTwice));
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (ExecutorService signatureExecutor : Arrays.asList(null, executor)) {
+                MultiSignatureResult result = xmlVerifier.verifySignatures(new ByteArrayInputStream(countersigned), SignatureQuorum.ALL, signatureExecutor);
+                assertTrue("XML signatures are invalid", result.isValid());
+                assertNotNull("Verified document is missing", result.getDocument());
+                assertEquals("Invalid number of signatures", 2, result.getSignatures().size());
+                for (SignatureResult signature : result.getSignatures()) {
+                    assertEquals("Invalid signer", ((X509Certificate) privateKey.getCertificate()).getSubjectX500Principal().getName(), signature.getSignerName());
+                }
+            }
+
+            Document tampered = Utility.loadXmlDocument(new ByteArrayInputStream(countersigned));
+            tampered.getElementsByTagNameNS(XMLSignature.XMLNS, "SignatureValue").item(1).setTextContent("AAAA");
+            byte[] partlyValid = TestUtility.readFully(TestUtility.getInputStreamFromDocument(tampered));
+
+            MultiSignatureResult all = xmlVerifier.verifySignatures(new ByteArrayInputStream(partlyValid), SignatureQuorum.ALL, executor);
+            assertFalse("Quorum of all signatures should not be satisfied", all.isValid());
+            assertNull("Document of invalid result should not be retained", all.getDocument());
+            assertEquals("Invalid reason", "1 of 2 signatures are valid, 2 required", all.getReason());
+            assertEquals("Invalid status", VerificationResult.Status.VALID, all.getSignatures().get(0).getStatus());
+            assertEquals("Invalid status", VerificationResult.Status.INVALID, all.getSignatures().get(1).getStatus());
+
+            assertTrue("Quorum of any signature should be satisfied", xmlVerifier.verifySignatures(new ByteArrayInputStream(partlyValid), SignatureQuorum.ANY, executor).isValid());
+            assertFalse("Quorum of two signatures should not be satisfied", xmlVerifier.verifySignatures(new ByteArrayInputStream(partlyValid), SignatureQuorum.atLeast(2), null).isValid());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testVerifyingWithReloadedPemDirectorySucceeds() throws Exception {
+        Path directory = Files.createTempDirectory("trust");
+        try (WatchingTrustMaterialProvider provider = WatchingTrustMaterialProvider.forPemDirectory(directory)) {
+            XmlVerifier verifier = new XmlVerifier(new X509KeySelector(provider));
+            try {
+                verifier.verify(getClass().getClassLoader().getResourceAsStream("valid.xml"));
+                fail("Empty trust store should cause verification exception");
+            } catch (XmlVerificationException xve) {
+                assertEquals("Invalid exception message", "Signature verification failed: cannot find validation key", xve.getMessage());
+            }
+
+            long version = provider.getSnapshot().getVersion();
+            Files.copy(getClass().getClassLoader().getResourceAsStream("certs/ca.pem"), directory.resolve("ca.pem"));
+            for (int i = 0; i < 100 && provider.getSnapshot().getVersion() == version; i++) {
+                Thread.sleep(100);
+            }
+
+            assertEquals("Invalid number of trusted certificates", 1, provider.getSnapshot().getIndex().getCertificates().size());
+            assertNotNull("XML signature is invalid", verifier.verify(getClass().getClassLoader().getResourceAsStream("valid.xml")));
+        } finally {
+            Files.deleteIfExists(directory.resolve("ca.pem"));
+            Files.delete(directory);
+        }
+    }
+
 }